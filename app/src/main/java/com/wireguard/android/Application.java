@@ -5,7 +5,9 @@ import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.util.Log;
 
 import com.wireguard.android.backend.Backend;
 import com.wireguard.android.backend.GoBackend;
@@ -33,6 +35,7 @@ import dagger.Provides;
  */
 
 public class Application extends android.app.Application {
+    private static final String TAG = "WireGuard/" + Application.class.getSimpleName();
     private static ApplicationComponent component;
 
     public static ApplicationComponent getComponent() {
@@ -47,14 +50,38 @@ public class Application extends android.app.Application {
         component = DaggerApplication_ApplicationComponent.builder()
                 .applicationModule(new ApplicationModule(this))
                 .build();
+        if (component.getBackendType() == WgQuickBackend.class)
+            warmUpRootShell();
         component.getTunnelManager().onCreate();
     }
 
+    /**
+     * Starts a root shell and links the tools in the background, so that the su prompt and
+     * startup cost are not paid by the user's first tunnel operation.
+     */
+    private static void warmUpRootShell() {
+        final long startTime = SystemClock.elapsedRealtime();
+        component.getAsyncWorker().runParallelAsync(() -> {
+            component.getRootShell().start();
+            component.getToolsInstaller().ensureToolsAvailable();
+        }).whenComplete((ignored, e) -> {
+            if (e != null)
+                Log.w(TAG, "Unable to prepare root shell", e);
+            else
+                Log.d(TAG, "Prepared root shell in " +
+                        (SystemClock.elapsedRealtime() - startTime) + " ms");
+        });
+    }
+
     @ApplicationScope
     @Component(modules = ApplicationModule.class)
     public interface ApplicationComponent {
         AsyncWorker getAsyncWorker();
 
+        Backend getBackend();
+
+        RootShell getRootShell();
+
         ToolsInstaller getToolsInstaller();
 
         TunnelManager getTunnelManager();
@@ -86,11 +113,12 @@ public class Application extends android.app.Application {
         @Provides
         public static Backend getBackend(@ApplicationContext final Context context,
                                          final RootShell rootShell,
+                                         final SharedPreferences preferences,
                                          final ToolsInstaller toolsInstaller) {
             if (new File("/sys/module/wireguard").exists())
                 return new WgQuickBackend(context, rootShell, toolsInstaller);
             else
-                return new GoBackend(context);
+                return new GoBackend(context, preferences);
         }
 
         @ApplicationScope
@@ -6,9 +6,14 @@ import android.databinding.CallbackRegistry.NotifierCallback;
 import android.os.Bundle;
 
 import com.wireguard.android.Application;
+import com.wireguard.android.backend.WgQuickBackend;
 import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.TunnelManager;
+import com.wireguard.android.util.RootShellMetrics;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -26,6 +31,30 @@ public abstract class BaseActivity extends Activity {
         selectionChangeRegistry.add(listener);
     }
 
+    /**
+     * Adds the root command statistics to {@code adb shell dumpsys activity}, as JSON if the
+     * arguments include {@code --json}.
+     */
+    @Override
+    public void dump(final String prefix, final FileDescriptor fd, final PrintWriter writer,
+                     final String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (Application.getComponent().getBackendType() != WgQuickBackend.class)
+            return;
+        final RootShellMetrics metrics = Application.getComponent().getRootShell().getMetrics();
+        writer.print(prefix);
+        writer.println("Root commands:");
+        if (args != null && Arrays.asList(args).contains("--json")) {
+            writer.print(prefix);
+            writer.println(metrics.getJson());
+            return;
+        }
+        for (final String line : metrics.getReport().split("\n")) {
+            writer.print(prefix);
+            writer.println(line);
+        }
+    }
+
     public Tunnel getSelectedTunnel() {
         return selectedTunnel;
     }
@@ -7,6 +7,7 @@ import android.preference.PreferenceFragment;
 
 import com.wireguard.android.Application;
 import com.wireguard.android.R;
+import com.wireguard.android.backend.GoBackend;
 import com.wireguard.android.backend.WgQuickBackend;
 
 /**
@@ -25,14 +26,24 @@ public class SettingsActivity extends Activity {
     }
 
     public static class SettingsFragment extends PreferenceFragment {
+        private static final String[] GO_PREFERENCES = {"debug_logging", "go_log"};
+        private static final String[] ROOT_PREFERENCES = {"root_shell_metrics", "tools_installer"};
+
         @Override
         public void onCreate(final Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.preferences);
-            if (Application.getComponent().getBackendType() != WgQuickBackend.class) {
-                final Preference toolsInstaller =
-                        getPreferenceManager().findPreference("tools_installer");
-                getPreferenceScreen().removePreference(toolsInstaller);
+            final Class backendType = Application.getComponent().getBackendType();
+            if (backendType != WgQuickBackend.class)
+                removePreferences(ROOT_PREFERENCES);
+            if (backendType != GoBackend.class)
+                removePreferences(GO_PREFERENCES);
+        }
+
+        private void removePreferences(final String[] keys) {
+            for (final String key : keys) {
+                final Preference preference = getPreferenceManager().findPreference(key);
+                getPreferenceScreen().removePreference(preference);
             }
         }
     }
@@ -3,12 +3,13 @@ package com.wireguard.android.backend;
 import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.Tunnel.State;
 import com.wireguard.android.model.Tunnel.Statistics;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.util.Set;
 
 /**
- * Interface for implementations of the WireGuard secure network tunnel.
+ * Interface for implementations of the WireGuard secure network tunnel. Methods may be called
+ * from several threads at once; implementations serialize the operations on each tunnel.
  */
 
 public interface Backend {
@@ -21,7 +22,7 @@ public interface Backend {
      * @param config The new configuration for this tunnel.
      * @return The updated configuration of the tunnel.
      */
-    Config applyConfig(Tunnel tunnel, Config config) throws Exception;
+    ConfigSpec applyConfig(Tunnel tunnel, ConfigSpec config) throws Exception;
 
     /**
      * Enumerate the names of currently-running tunnels.
@@ -0,0 +1,95 @@
+package com.wireguard.android.backend;
+
+import com.wireguard.android.util.RootShell.LineConsumer;
+import com.wireguard.crypto.Key;
+import com.wireguard.crypto.KeyEncoding;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses the output of {@code wg show all dump} one line at a time, as it is read from the
+ * shell by {@link com.wireguard.android.util.RootShell#runStreaming}. Lines are parsed in place
+ * by their tab positions and never stored.
+ */
+
+final class DumpParser implements LineConsumer {
+    // Interface lines have five tab-separated fields, and peer lines have nine.
+    private static final int INTERFACE_TABS = 4;
+    private static final int PEER_TABS = 8;
+
+    private final Map<String, Map<Key, PeerStatistics>> interfaces = new HashMap<>();
+    private final byte[] keyBuffer = new byte[KeyEncoding.KEY_LENGTH];
+    private final int[] tabs = new int[PEER_TABS + 1];
+    private Map<Key, PeerStatistics> currentInterface;
+    private String currentName;
+
+    private static long parseLong(final String line, final int start, final int end) {
+        if (start == end)
+            throw new NumberFormatException("Empty number in wg dump");
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            final int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("Invalid number in wg dump");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    @Override
+    public void accept(final String line) {
+        int count = 0;
+        for (int i = line.indexOf('\t'); i >= 0 && count < tabs.length; i = line.indexOf('\t', i + 1))
+            tabs[count++] = i;
+        if (count != INTERFACE_TABS && count != PEER_TABS)
+            return;
+        // Consecutive lines usually belong to the same interface, so avoid copying its name.
+        final int nameLength = tabs[0];
+        if (currentName == null || currentName.length() != nameLength
+                || !line.regionMatches(0, currentName, 0, nameLength)) {
+            currentName = line.substring(0, nameLength);
+            currentInterface = interfaces.get(currentName);
+            if (currentInterface == null) {
+                currentInterface = new HashMap<>();
+                interfaces.put(currentName, currentInterface);
+            }
+        }
+        if (count == INTERFACE_TABS || tabs[1] - tabs[0] - 1 != KeyEncoding.KEY_LENGTH_BASE64)
+            return;
+        try {
+            KeyEncoding.keyFromBase64(line, tabs[0] + 1, keyBuffer, 0);
+            final String endpoint = line.startsWith("(none)", tabs[2] + 1)
+                    ? null : line.substring(tabs[2] + 1, tabs[3]);
+            currentInterface.put(Key.fromBytes(keyBuffer), new PeerStatistics(
+                    parseLong(line, tabs[5] + 1, tabs[6]),
+                    parseLong(line, tabs[6] + 1, tabs[7]),
+                    parseLong(line, tabs[4] + 1, tabs[5]) * 1000,
+                    endpoint));
+        } catch (final IllegalArgumentException ignored) {
+            // Skip peers that cannot be parsed rather than failing the whole dump.
+        }
+    }
+
+    /**
+     * @return The peers of each running interface, by interface name.
+     */
+    Map<String, Map<Key, PeerStatistics>> getInterfaces() {
+        return interfaces;
+    }
+
+    static final class PeerStatistics {
+        final String endpoint;
+        final long lastHandshakeTime;
+        final long rxBytes;
+        final long txBytes;
+
+        private PeerStatistics(final long rxBytes, final long txBytes,
+                               final long lastHandshakeTime, final String endpoint) {
+            this.endpoint = endpoint;
+            this.lastHandshakeTime = lastHandshakeTime;
+            this.rxBytes = rxBytes;
+            this.txBytes = txBytes;
+        }
+    }
+}
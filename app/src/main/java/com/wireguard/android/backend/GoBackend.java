@@ -1,46 +1,283 @@
 package com.wireguard.android.backend;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.net.RouteInfo;
+import android.os.AsyncTask;
 import android.support.v4.util.ArraySet;
 import android.util.Log;
 
 import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.Tunnel.State;
 import com.wireguard.android.model.Tunnel.Statistics;
-import com.wireguard.config.Config;
-import com.wireguard.config.Interface;
-import com.wireguard.config.Peer;
+import com.wireguard.config.ConfigDiff;
+import com.wireguard.config.ConfigSpec;
+import com.wireguard.config.InterfaceSpec;
+import com.wireguard.config.PeerSpec;
+import com.wireguard.crypto.Key;
 import com.wireguard.crypto.KeyEncoding;
 
-import java.util.Collections;
-import java.util.Formatter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public final class GoBackend implements Backend {
     private static final String TAG = "WireGuard/" + GoBackend.class.getSimpleName();
+    // Same assumptions as wg-quick: 1500 if no route MTU is known, and 80 bytes of overhead.
+    private static final int DEFAULT_LINK_MTU = 1500;
+    private static final String KEY_DEBUG_LOGGING = "debug_logging";
+    private static final int WIREGUARD_OVERHEAD = 80;
 
     static {
         System.loadLibrary("wg-go");
     }
 
     private final Context context;
-    private Tunnel currentTunnel;
+    // SharedPreferences only holds weak references to its listeners.
+    private final OnSharedPreferenceChangeListener debugLoggingListener;
+    private final GoLog log = new GoLog();
+    private final ScheduledExecutorService logDrainer = Executors.newSingleThreadScheduledExecutor();
+    private final ConnectivityManager.NetworkCallback networkCallback =
+            new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(final Network network) {
+                    onRoutesChanged();
+                }
+
+                @Override
+                public void onLinkPropertiesChanged(final Network network,
+                                                    final LinkProperties linkProperties) {
+                    onRoutesChanged();
+                }
+
+                @Override
+                public void onLost(final Network network) {
+                    onRoutesChanged();
+                }
+            };
+    private final Map<Tunnel, NativeTunnel> tunnelHandles = new ConcurrentHashMap<>();
+    private boolean isNetworkCallbackRegistered;
+    private ScheduledFuture<?> logDrain;
 
-    public GoBackend(final Context context) {
+    public GoBackend(final Context context, final SharedPreferences preferences) {
         this.context = context;
+        setDebugLogging(preferences.getBoolean(KEY_DEBUG_LOGGING, false));
+        debugLoggingListener = (sharedPreferences, key) -> {
+            if (KEY_DEBUG_LOGGING.equals(key))
+                setDebugLogging(sharedPreferences.getBoolean(key, false));
+        };
+        preferences.registerOnSharedPreferenceChangeListener(debugLoggingListener);
     }
 
+    private static native String wgGetConfig(int handle);
+
     private static native int wgGetSocketV4(int handle);
 
     private static native int wgGetSocketV6(int handle);
 
+    private static native int wgGetStatistics(int handle, ByteBuffer buffer);
+
+    private static native int wgSetConfig(int handle, ByteBuffer settings, int length);
+
+    private static native int wgSetMtu(int handle, int mtu);
+
     private static native void wgTurnOff(int handle);
 
-    private static native int wgTurnOn(String ifName, int tunFd, String settings);
+    private static native int wgTurnOn(String ifName, int tunFd, int mtu, ByteBuffer settings, int length);
+
+    private static Key checkKey(final Key key) {
+        if (key == null)
+            throw new IllegalArgumentException("Invalid key in tunnel configuration");
+        return key;
+    }
+
+    private static void writePeer(final UapiWriter writer, final PeerSpec peer, final boolean isUpdate) {
+        writer.write("public_key", checkKey(peer.getDecodedPublicKey()));
+        if (isUpdate) {
+            // Fields that were removed from the configuration must be explicitly reset.
+            if (peer.getPreSharedKey() == null)
+                writer.write("preshared_key", (Key) null);
+            if (peer.getPersistentKeepalive() == null)
+                writer.write("persistent_keepalive_interval", 0);
+            writer.write("replace_allowed_ips", true);
+        }
+        if (peer.getPreSharedKey() != null)
+            writer.write("preshared_key", checkKey(peer.getDecodedPreSharedKey()));
+        if (peer.getEndpoint() != null)
+            writer.write("endpoint", peer.getEndpoint());
+        if (peer.getPersistentKeepalive() != null)
+            writer.write("persistent_keepalive_interval", Integer.parseInt(peer.getPersistentKeepalive()));
+        if (peer.getAllowedIPs() != null)
+            writer.writeAllowedIps(peer.getAllowedIPs());
+    }
+
+    /**
+     * Writes UAPI settings that change a running device according to {@code diff}, without
+     * replacing the peers that are not mentioned in it.
+     */
+    private static UapiWriter writeDiff(final ConfigDiff diff) {
+        final UapiWriter writer = new UapiWriter(estimateSize(diff.getAddedPeers().size()
+                + diff.getModifiedPeers().size() + diff.getRemovedPeers().size()));
+        final InterfaceSpec iface = diff.getNewInterface();
+        if (diff.isPrivateKeyChanged())
+            writer.write("private_key", iface.getPrivateKey() != null
+                    ? checkKey(iface.getDecodedPrivateKey()) : null);
+        if (diff.isListenPortChanged())
+            writer.write("listen_port", iface.getListenPort() != null ? Integer.parseInt(iface.getListenPort()) : 0);
+        for (final PeerSpec peer : diff.getRemovedPeers()) {
+            writer.write("public_key", checkKey(peer.getDecodedPublicKey()));
+            writer.write("remove", true);
+        }
+        for (final PeerSpec peer : diff.getAddedPeers())
+            writePeer(writer, peer, false);
+        for (final PeerSpec peer : diff.getModifiedPeers())
+            writePeer(writer, peer, true);
+        return writer;
+    }
+
+    /**
+     * Returns the address of a numeric UAPI endpoint such as {@code 192.0.2.1:51820} or
+     * {@code [2001:db8::1]:51820}, or null if it is not one. Never does a DNS lookup.
+     */
+    private static InetAddress parseEndpointAddress(final String endpoint) {
+        final int colon = endpoint.lastIndexOf(':');
+        if (colon <= 0)
+            return null;
+        String host = endpoint.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]"))
+            host = host.substring(1, host.length() - 1);
+        if (host.indexOf(':') < 0 && !host.matches("[0-9.]+"))
+            return null;
+        try {
+            return InetAddress.getByName(host);
+        } catch (final UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the automatic MTU of a running tunnel: the smallest MTU of the routes to its peers'
+     * endpoints minus WireGuard's overhead, which is what wg-quick does for the kernel module.
+     * The endpoints are read back from the device, which has already resolved them.
+     */
+    private int getAutomaticMtu(final int handle) {
+        int linkMtu = DEFAULT_LINK_MTU;
+        final String uapi = wgGetConfig(handle);
+        if (uapi == null)
+            return linkMtu - WIREGUARD_OVERHEAD;
+        for (final String line : uapi.split("\n")) {
+            if (!line.startsWith("endpoint="))
+                continue;
+            final InetAddress address = parseEndpointAddress(line.substring("endpoint=".length()));
+            if (address == null)
+                continue;
+            final int routeMtu = getRouteMtu(address);
+            if (routeMtu > 0 && routeMtu < linkMtu)
+                linkMtu = routeMtu;
+        }
+        return linkMtu - WIREGUARD_OVERHEAD;
+    }
+
+    /**
+     * Returns the MTU of the interface that traffic to {@code address} would leave through
+     * outside of any VPN, or -1 if it cannot be determined. The most specific matching route of
+     * the underlying networks is used, so that the tunnel itself is never measured.
+     */
+    private int getRouteMtu(final InetAddress address) {
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        String interfaceName = null;
+        int prefixLength = -1;
+        for (final Network network : connectivityManager.getAllNetworks()) {
+            final NetworkCapabilities capabilities =
+                    connectivityManager.getNetworkCapabilities(network);
+            if (capabilities == null
+                    || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_VPN))
+                continue;
+            final LinkProperties linkProperties = connectivityManager.getLinkProperties(network);
+            if (linkProperties == null)
+                continue;
+            for (final RouteInfo route : linkProperties.getRoutes()) {
+                if (!route.matches(address)
+                        || route.getDestination().getPrefixLength() <= prefixLength)
+                    continue;
+                prefixLength = route.getDestination().getPrefixLength();
+                interfaceName = route.getInterface() != null
+                        ? route.getInterface() : linkProperties.getInterfaceName();
+            }
+        }
+        if (interfaceName == null)
+            return -1;
+        try {
+            final NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+            return networkInterface != null ? networkInterface.getMTU() : -1;
+        } catch (final SocketException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns a buffer size that usually holds the settings for {@code peerCount} peers without
+     * having to grow.
+     */
+    private static int estimateSize(final int peerCount) {
+        return 256 + 320 * peerCount;
+    }
 
     @Override
-    public Config applyConfig(final Tunnel tunnel, final Config config) throws Exception {
-        if (tunnel.getState() == State.UP) {
+    public ConfigSpec applyConfig(final Tunnel tunnel, final ConfigSpec config) throws Exception {
+        // Operations on one tunnel are serialized; different tunnels proceed independently.
+        synchronized (tunnel) {
+            applyConfigLocked(tunnel, config);
+        }
+        return config;
+    }
+
+    private void applyConfigLocked(final Tunnel tunnel, final ConfigSpec config) throws Exception {
+        final NativeTunnel nativeTunnel = tunnelHandles.get(tunnel);
+        if (nativeTunnel != null) {
+            // Compare against what the device is really running, in case an earlier update was
+            // only partly applied.
+            final String uapi = wgGetConfig(nativeTunnel.handle);
+            ConfigSpec running = uapi != null ? UapiReader.parse(uapi, tunnel.getConfig()) : null;
+            if (running == null)
+                running = tunnel.getConfig();
+            final ConfigDiff diff = ConfigDiff.between(running, config);
+            if (diff.isEmpty())
+                return;
+            if (!diff.requiresRestart()) {
+                // Change only what differs, keeping existing sessions alive.
+                final UapiWriter writer = writeDiff(diff);
+                if (wgSetConfig(nativeTunnel.handle, writer.buffer(), writer.length()) == 0) {
+                    final NativeTunnel updated = new NativeTunnel(nativeTunnel.handle, config,
+                            nativeTunnel.mtu);
+                    tunnelHandles.put(tunnel, updated);
+                    // The endpoints may have changed.
+                    updateAutomaticMtu(tunnel, updated);
+                    return;
+                }
+                Log.w(TAG, "Unable to update tunnel " + tunnel.getName() + " in place; restarting");
+            }
             // Restart the tunnel to apply the new config.
             setStateInternal(tunnel, tunnel.getConfig(), State.DOWN);
             try {
@@ -51,75 +288,248 @@ public final class GoBackend implements Backend {
                 throw e;
             }
         }
-        return config;
     }
 
     @Override
     public Set<String> enumerate() {
-        if (currentTunnel != null) {
-            final Set<String> runningTunnels = new ArraySet<>();
-            runningTunnels.add(currentTunnel.getName());
-            return runningTunnels;
-        }
-        return Collections.emptySet();
+        final Set<String> runningTunnels = new ArraySet<>();
+        for (final Tunnel tunnel : tunnelHandles.keySet())
+            runningTunnels.add(tunnel.getName());
+        return runningTunnels;
+    }
+
+    /**
+     * Writes the retained native log lines to {@code stream}, one per line.
+     */
+    public void exportLog(final OutputStream stream) throws IOException {
+        log.writeTo(stream);
     }
 
     @Override
     public State getState(final Tunnel tunnel) {
-        return currentTunnel == tunnel ? State.UP : State.DOWN;
+        return tunnelHandles.containsKey(tunnel) ? State.UP : State.DOWN;
     }
 
     @Override
     public Statistics getStatistics(final Tunnel tunnel) {
-        return new Statistics();
+        // Hold the tunnel's lock so its handle cannot be released and reused while reading.
+        synchronized (tunnel) {
+            final NativeTunnel nativeTunnel = tunnelHandles.get(tunnel);
+            if (nativeTunnel == null)
+                return new Statistics();
+            return nativeTunnel.readStatistics();
+        }
+    }
+
+    /**
+     * Recomputes the automatic MTU of each running tunnel that has no configured MTU. This runs
+     * in the background, since it waits for each tunnel's lock.
+     */
+    private void onRoutesChanged() {
+        if (tunnelHandles.isEmpty())
+            return;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            for (final Tunnel tunnel : tunnelHandles.keySet()) {
+                synchronized (tunnel) {
+                    final NativeTunnel nativeTunnel = tunnelHandles.get(tunnel);
+                    if (nativeTunnel != null)
+                        updateAutomaticMtu(tunnel, nativeTunnel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Enables or disables debug messages from the userspace implementation. Errors and
+     * informational messages are always logged.
+     */
+    private void setDebugLogging(final boolean isEnabled) {
+        log.setLevel(isEnabled ? GoLog.LEVEL_DEBUG : GoLog.LEVEL_INFO);
     }
 
     @Override
     public State setState(final Tunnel tunnel, State state) throws Exception {
-        final State originalState = getState(tunnel);
-        if (state == State.TOGGLE)
-            state = originalState == State.UP ? State.DOWN : State.UP;
-        if (state == originalState)
-            return originalState;
-        if (state == State.UP && currentTunnel != null)
-            throw new IllegalStateException("Only one userspace tunnel can run at a time");
-        Log.d(TAG, "Changing tunnel " + tunnel.getName() + " to state " + state);
-        setStateInternal(tunnel, tunnel.getConfig(), state);
-        return getState(tunnel);
-    }
-
-    private void setStateInternal(final Tunnel tunnel, final Config config, final State state)
+        synchronized (tunnel) {
+            final State originalState = getState(tunnel);
+            if (state == State.TOGGLE)
+                state = originalState == State.UP ? State.DOWN : State.UP;
+            if (state == originalState)
+                return originalState;
+            Log.d(TAG, "Changing tunnel " + tunnel.getName() + " to state " + state);
+            setStateInternal(tunnel, tunnel.getConfig(), state);
+            return getState(tunnel);
+        }
+    }
+
+    private void setStateInternal(final Tunnel tunnel, final ConfigSpec config, final State state)
             throws Exception {
         if (state == State.UP) {
             // Do something (context.startService()...).
-            currentTunnel = tunnel;
-
-            Formatter fmt = new Formatter(new StringBuilder());
-            final Interface iface = config.getInterface();
-            fmt.format("replace_peers=true\n");
+            final UapiWriter writer = new UapiWriter(estimateSize(config.getPeers().size()));
+            final InterfaceSpec iface = config.getInterface();
+            writer.write("replace_peers", true);
             if (iface.getPrivateKey() != null)
-                fmt.format("private_key=%s\n", KeyEncoding.keyToHex(KeyEncoding.keyFromBase64(iface.getPrivateKey())));
+                writer.write("private_key", checkKey(iface.getDecodedPrivateKey()));
             if (iface.getListenPort() != null)
-                fmt.format("listen_port=%d\n", Integer.parseInt(config.getInterface().getListenPort()));
-            for (final Peer peer : config.getPeers()) {
+                writer.write("listen_port", Integer.parseInt(iface.getListenPort()));
+            for (final PeerSpec peer : config.getPeers()) {
                 if (peer.getPublicKey() != null)
-                    fmt.format("public_key=%s\n", KeyEncoding.keyToHex(KeyEncoding.keyFromBase64(peer.getPublicKey())));
-                if (peer.getPreSharedKey() != null)
-                    fmt.format("preshared_key=%s\n", KeyEncoding.keyToHex(KeyEncoding.keyFromBase64(peer.getPreSharedKey())));
-                if (peer.getEndpoint() != null)
-                    fmt.format("endpoint=%s\n", peer.getEndpoint());
-                if (peer.getPersistentKeepalive() != null)
-                    fmt.format("persistent_keepalive_interval=%d\n", Integer.parseInt(peer.getPersistentKeepalive()));
-                if (peer.getAllowedIPs() != null) {
-                    for (final String allowedIp : peer.getAllowedIPs().split(" *, *")) {
-                        fmt.format("allowed_ip=%s\n", allowedIp);
-                    }
-                }
+                    writePeer(writer, peer, false);
             }
-            wgTurnOn(tunnel.getName(), -1, fmt.toString());
+            // Start with the default automatic MTU, and refine it once the device has resolved
+            // the endpoints.
+            final int mtu = iface.getMtu() != null ? Integer.parseInt(iface.getMtu())
+                    : DEFAULT_LINK_MTU - WIREGUARD_OVERHEAD;
+            final int handle = wgTurnOn(tunnel.getName(), -1, mtu, writer.buffer(), writer.length());
+            if (handle < 0)
+                throw new Exception("Unable to turn tunnel on (wgTurnOn returned " + handle + ')');
+            final NativeTunnel nativeTunnel = new NativeTunnel(handle, config, mtu);
+            tunnelHandles.put(tunnel, nativeTunnel);
+            updateAutomaticMtu(tunnel, nativeTunnel);
         } else {
             // Do something else.
-            currentTunnel = null;
+            final NativeTunnel nativeTunnel = tunnelHandles.remove(tunnel);
+            if (nativeTunnel != null)
+                wgTurnOff(nativeTunnel.handle);
+        }
+        updateLogDrain();
+        updateNetworkCallback();
+    }
+
+    /**
+     * Sets a running tunnel's MTU to the automatic one, unless it has a configured MTU. Must be
+     * called with the tunnel's lock held.
+     */
+    private void updateAutomaticMtu(final Tunnel tunnel, final NativeTunnel nativeTunnel) {
+        if (nativeTunnel.config.getInterface().getMtu() != null)
+            return;
+        final int mtu = getAutomaticMtu(nativeTunnel.handle);
+        if (mtu != nativeTunnel.mtu && wgSetMtu(nativeTunnel.handle, mtu) == 0) {
+            Log.i(TAG, "Changing MTU of tunnel " + tunnel.getName() + " to " + mtu);
+            nativeTunnel.mtu = mtu;
+        }
+    }
+
+    /**
+     * Drains the native log once a second while any tunnel is running, and once more after the
+     * last one stops.
+     */
+    private synchronized void updateLogDrain() {
+        if (!tunnelHandles.isEmpty() && logDrain == null) {
+            logDrain = logDrainer.scheduleWithFixedDelay(log::drain, 1, 1, TimeUnit.SECONDS);
+        } else if (tunnelHandles.isEmpty() && logDrain != null) {
+            logDrain.cancel(false);
+            logDrain = null;
+            logDrainer.execute(log::drain);
+        }
+    }
+
+    /**
+     * Follows route changes, to keep automatic MTUs up to date, only while any tunnel is running.
+     */
+    private synchronized void updateNetworkCallback() {
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (!tunnelHandles.isEmpty() && !isNetworkCallbackRegistered) {
+            connectivityManager.registerNetworkCallback(new NetworkRequest.Builder().build(),
+                    networkCallback);
+            isNetworkCallbackRegistered = true;
+        } else if (tunnelHandles.isEmpty() && isNetworkCallbackRegistered) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            isNetworkCallbackRegistered = false;
+        }
+    }
+
+    /**
+     * A tunnel running in the native library, along with an index of its peers' public keys.
+     * Statistics come back from native code as fixed-size binary records, and the index lets
+     * them be matched to peers without decoding keys or allocating per peer.
+     */
+    private static final class NativeTunnel {
+        // Public key, then rx bytes, tx bytes, and last handshake in nanoseconds (native order).
+        private static final int RECORD_SIZE = KeyEncoding.KEY_LENGTH + 3 * 8;
+
+        private final ConfigSpec config;
+        private final int handle;
+        private final long[] keyPrefixes;
+        private final int[] peerIndices;
+        private final int peerCount;
+        private final byte[][] publicKeys;
+        // Guarded by the tunnel's lock.
+        private int mtu;
+        private ByteBuffer records;
+
+        private NativeTunnel(final int handle, final ConfigSpec config, final int mtu) {
+            this.config = config;
+            this.handle = handle;
+            this.mtu = mtu;
+            final List<PeerSpec> peers = config.getPeers();
+            peerCount = peers.size();
+            publicKeys = new byte[peerCount][];
+            final Integer[] order = new Integer[peerCount];
+            final long[] prefixes = new long[peerCount];
+            int count = 0;
+            for (int i = 0; i < peerCount; ++i) {
+                final Key key = peers.get(i).getDecodedPublicKey();
+                if (key == null)
+                    continue;
+                publicKeys[i] = key.getBytes();
+                prefixes[i] = ByteBuffer.wrap(publicKeys[i]).order(ByteOrder.nativeOrder()).getLong(0);
+                order[count++] = i;
+            }
+            // Sort the peers by the first eight bytes of their keys, for binary search.
+            Arrays.sort(order, 0, count, (a, b) -> Long.compare(prefixes[a], prefixes[b]));
+            keyPrefixes = new long[count];
+            peerIndices = new int[count];
+            for (int i = 0; i < count; ++i) {
+                peerIndices[i] = order[i];
+                keyPrefixes[i] = prefixes[order[i]];
+            }
+        }
+
+        /**
+         * Returns the index in the configuration of the peer whose public key is at {@code offset}
+         * in the record buffer, or -1 if there is none.
+         */
+        private int findPeer(final int offset) {
+            final long prefix = records.getLong(offset);
+            int i = Arrays.binarySearch(keyPrefixes, prefix);
+            if (i < 0)
+                return -1;
+            while (i > 0 && keyPrefixes[i - 1] == prefix)
+                --i;
+            for (; i < keyPrefixes.length && keyPrefixes[i] == prefix; ++i) {
+                final byte[] key = publicKeys[peerIndices[i]];
+                int j = 8;
+                while (j < key.length && records.get(offset + j) == key[j])
+                    ++j;
+                if (j == key.length)
+                    return peerIndices[i];
+            }
+            return -1;
+        }
+
+        private Statistics readStatistics() {
+            if (records == null)
+                records = allocateRecords(Math.max(peerCount, 1));
+            int count;
+            while ((count = wgGetStatistics(handle, records)) * RECORD_SIZE > records.capacity())
+                records = allocateRecords(count);
+            final Statistics statistics = new Statistics(peerCount);
+            for (int i = 0; i < count; ++i) {
+                final int offset = i * RECORD_SIZE;
+                final int peer = findPeer(offset);
+                if (peer < 0)
+                    continue;
+                statistics.setPeer(peer, records.getLong(offset + KeyEncoding.KEY_LENGTH),
+                        records.getLong(offset + KeyEncoding.KEY_LENGTH + 8),
+                        records.getLong(offset + KeyEncoding.KEY_LENGTH + 16) / 1000000);
+            }
+            return statistics;
+        }
+
+        private static ByteBuffer allocateRecords(final int count) {
+            return ByteBuffer.allocateDirect(count * RECORD_SIZE).order(ByteOrder.nativeOrder());
         }
     }
 }
@@ -0,0 +1,78 @@
+package com.wireguard.android.backend;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Collects the log of the userspace WireGuard implementation. Native code writes log lines into
+ * a fixed-size ring without blocking; this class drains the ring in batches, forwards the lines
+ * to logcat, and keeps the most recent ones for display and export.
+ */
+
+final class GoLog {
+    static final int LEVEL_DEBUG = 2;
+    static final int LEVEL_ERROR = 0;
+    static final int LEVEL_INFO = 1;
+    private static final int MAX_LINES = 2000;
+    private static final String TAG = "WireGuard/GoBackend";
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final byte[] bytes = new byte[buffer.capacity()];
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    private static native int wgDrainLog(ByteBuffer buffer);
+
+    private static native void wgSetLogLevel(int level);
+
+    private static int priorityOf(final byte level) {
+        switch (level) {
+            case 'E':
+                return Log.ERROR;
+            case 'I':
+                return Log.INFO;
+            default:
+                return Log.DEBUG;
+        }
+    }
+
+    /**
+     * Moves all pending lines out of the native ring.
+     */
+    synchronized void drain() {
+        int length;
+        while ((length = wgDrainLog(buffer)) > 0) {
+            buffer.clear();
+            buffer.get(bytes, 0, length);
+            buffer.clear();
+            int start = 0;
+            for (int i = 0; i < length; ++i) {
+                if (bytes[i] != '\n')
+                    continue;
+                final String line = new String(bytes, start + 1, i - start - 1, StandardCharsets.UTF_8);
+                Log.println(priorityOf(bytes[start]), TAG, line);
+                if (lines.size() == MAX_LINES)
+                    lines.removeFirst();
+                lines.addLast(line);
+                start = i + 1;
+            }
+        }
+    }
+
+    void setLevel(final int level) {
+        wgSetLogLevel(level);
+    }
+
+    synchronized void writeTo(final OutputStream stream) throws IOException {
+        drain();
+        for (final String line : lines) {
+            stream.write(line.getBytes(StandardCharsets.UTF_8));
+            stream.write('\n');
+        }
+    }
+}
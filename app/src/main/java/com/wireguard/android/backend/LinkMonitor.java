@@ -0,0 +1,110 @@
+package com.wireguard.android.backend;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.wireguard.android.util.RootShell;
+import com.wireguard.android.util.RootShell.NoRootException;
+import com.wireguard.android.util.RootShell.ShellProcess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reports changes to the system's network interfaces. A root {@code ip monitor link} process
+ * stays subscribed to the kernel's netlink link notifications, and the listener is called for
+ * each one, including for interfaces that were created or removed outside of this app.
+ */
+
+final class LinkMonitor {
+    private static final String COMMAND = "echo ready; exec ip -o monitor link";
+    // ip does not say when it has subscribed, so give it a moment after the shell execs it.
+    private static final long SETTLE_TIME_MS = 1000;
+    private static final String TAG = "WireGuard/" + LinkMonitor.class.getSimpleName();
+
+    private final Runnable listener;
+    private final RootShell rootShell;
+    private boolean failed;
+    private boolean isReady;
+    private ShellProcess shell;
+    private long startTime;
+
+    LinkMonitor(final RootShell rootShell, final Runnable listener) {
+        this.listener = listener;
+        this.rootShell = rootShell;
+    }
+
+    private static void startThread(final Runnable runnable, final String suffix) {
+        final Thread thread = new Thread(runnable, TAG + suffix);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return Whether every link change since {@code time} (from
+     * {@link SystemClock#elapsedRealtime()}) has been or will be reported to the listener.
+     */
+    synchronized boolean isWatchingSince(final long time) {
+        return shell != null && isReady && time >= startTime + SETTLE_TIME_MS;
+    }
+
+    private void read(final ShellProcess shell) {
+        try {
+            final BufferedReader reader = shell.getStdout();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!"ready".equals(line))
+                    listener.run();
+                else
+                    onReady();
+            }
+        } catch (final IOException ignored) {
+            // Treated the same as the process exiting.
+        }
+        synchronized (this) {
+            this.shell = null;
+            failed = true;
+        }
+        shell.destroy();
+        Log.w(TAG, "Link monitor exited; interface changes will no longer be reported");
+        listener.run();
+    }
+
+    private synchronized void onReady() {
+        if (isReady)
+            return;
+        isReady = true;
+        startTime = SystemClock.elapsedRealtime();
+    }
+
+    private void readErrors(final ShellProcess shell) {
+        try {
+            final BufferedReader reader = shell.getStderr();
+            String line;
+            while ((line = reader.readLine()) != null)
+                Log.w(TAG, "ip: " + line);
+        } catch (final IOException ignored) {
+            // The stdout reader notices the process exiting.
+        }
+    }
+
+    /**
+     * Starts the monitor if it is not already running. It is not restarted after it fails, so
+     * that a device whose {@code ip} cannot monitor does not spawn a root process on every call.
+     */
+    synchronized void start() {
+        if (shell != null || failed)
+            return;
+        final ShellProcess newShell;
+        try {
+            newShell = rootShell.startDedicatedShell(COMMAND);
+        } catch (final IOException | NoRootException e) {
+            Log.w(TAG, "Unable to start link monitor", e);
+            failed = true;
+            return;
+        }
+        shell = newShell;
+        startThread(() -> read(newShell), " stdout");
+        startThread(() -> readErrors(newShell), " stderr");
+    }
+}
@@ -0,0 +1,161 @@
+package com.wireguard.android.backend;
+
+import com.wireguard.config.ConfigSpec;
+import com.wireguard.config.InterfaceSpec;
+import com.wireguard.config.PeerSpec;
+import com.wireguard.crypto.Key;
+import com.wireguard.crypto.KeyEncoding;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the WireGuard UAPI {@code key=value} description of a running device back into a
+ * configuration, so that changes can be computed against what the device is actually doing.
+ */
+
+final class UapiReader {
+    private static final String ZERO_KEY_HEX = KeyEncoding.keyToHex(new byte[KeyEncoding.KEY_LENGTH]);
+
+    private UapiReader() {
+        // Prevent instantiation.
+    }
+
+    /**
+     * Returns an allowed IP in the form the device reports it: the network address with its
+     * host bits cleared and an explicit prefix length. Returns null if it is not a numeric
+     * address, so that nothing is ever resolved through DNS.
+     */
+    private static String canonicalizeNetwork(final String allowedIp) {
+        final int slash = allowedIp.indexOf('/');
+        final String host = (slash < 0 ? allowedIp : allowedIp.substring(0, slash)).trim();
+        if (host.isEmpty() || (host.indexOf(':') < 0 && !host.matches("[0-9.]+")))
+            return null;
+        try {
+            final byte[] address = InetAddress.getByName(host).getAddress();
+            final int bits = address.length * 8;
+            final int prefix = slash < 0 ? bits
+                    : Integer.parseInt(allowedIp.substring(slash + 1).trim());
+            if (prefix < 0 || prefix > bits)
+                return null;
+            for (int i = 0; i < address.length; ++i) {
+                final int keptBits = Math.max(0, Math.min(8, prefix - i * 8));
+                address[i] &= (byte) (0xff << (8 - keptBits));
+            }
+            return InetAddress.getByAddress(address).getHostAddress() + '/' + prefix;
+        } catch (final NumberFormatException | UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the canonical forms of {@code allowedIps}, or null if any of them is invalid.
+     */
+    private static Set<String> canonicalizeNetworks(final Collection<String> allowedIps) {
+        final Set<String> networks = new HashSet<>();
+        for (final String allowedIp : allowedIps) {
+            final String network = canonicalizeNetwork(allowedIp);
+            if (network == null)
+                return null;
+            networks.add(network);
+        }
+        return networks;
+    }
+
+    private static String hexToBase64(final String hex) {
+        if (ZERO_KEY_HEX.equals(hex))
+            return null;
+        return Key.fromBytes(KeyEncoding.keyFromHex(hex)).toBase64();
+    }
+
+    /**
+     * Parses the UAPI state of a device that was configured from {@code configured}.
+     *
+     * Values the device chooses or learns by itself are not treated as configuration: the
+     * listen port is only read if one was configured, and the endpoints of known peers are
+     * taken from {@code configured}, since they roam. Allowed IPs that match the configured set
+     * keep the configured spelling. Fields that UAPI does not cover (addresses, DNS, and MTU)
+     * are copied from {@code configured}.
+     *
+     * @return The running configuration, or null if the description is malformed.
+     */
+    static ConfigSpec parse(final String uapi, final ConfigSpec configured) {
+        final InterfaceSpec configuredInterface = configured.getInterface();
+        final Map<String, PeerSpec> configuredPeers = new HashMap<>();
+        for (final PeerSpec peer : configured.getPeers()) {
+            if (peer.getPublicKey() != null)
+                configuredPeers.put(peer.getPublicKey(), peer);
+        }
+        final InterfaceSpec.Builder interfaceBuilder = new InterfaceSpec.Builder()
+                .setAddress(configuredInterface.getAddress())
+                .setDns(configuredInterface.getDns())
+                .setMtu(configuredInterface.getMtu());
+        final List<PeerSpec> peers = new ArrayList<>();
+        final List<String> allowedIps = new ArrayList<>();
+        PeerSpec.Builder peerBuilder = null;
+        PeerSpec configuredPeer = null;
+        try {
+            for (final String line : uapi.split("\n")) {
+                final int equals = line.indexOf('=');
+                if (equals < 0)
+                    continue;
+                final String key = line.substring(0, equals);
+                final String value = line.substring(equals + 1);
+                if ("public_key".equals(key)) {
+                    if (peerBuilder != null)
+                        peers.add(finishPeer(peerBuilder, configuredPeer, allowedIps));
+                    peerBuilder = new PeerSpec.Builder().setPublicKey(hexToBase64(value));
+                    configuredPeer = configuredPeers.get(hexToBase64(value));
+                    if (configuredPeer != null)
+                        peerBuilder.setEndpoint(configuredPeer.getEndpoint());
+                    allowedIps.clear();
+                } else if (peerBuilder == null) {
+                    if ("private_key".equals(key))
+                        interfaceBuilder.setPrivateKey(hexToBase64(value));
+                    else if ("listen_port".equals(key) && configuredInterface.getListenPort() != null)
+                        interfaceBuilder.setListenPort(value);
+                    else if ("errno".equals(key) && !"0".equals(value))
+                        return null;
+                } else if ("preshared_key".equals(key)) {
+                    peerBuilder.setPreSharedKey(hexToBase64(value));
+                } else if ("endpoint".equals(key)) {
+                    if (configuredPeer == null)
+                        peerBuilder.setEndpoint(value);
+                } else if ("persistent_keepalive_interval".equals(key)) {
+                    peerBuilder.setPersistentKeepalive("0".equals(value) ? null : value);
+                } else if ("allowed_ip".equals(key)) {
+                    allowedIps.add(value);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+        if (peerBuilder != null)
+            peers.add(finishPeer(peerBuilder, configuredPeer, allowedIps));
+        return new ConfigSpec(interfaceBuilder.build(), peers);
+    }
+
+    private static PeerSpec finishPeer(final PeerSpec.Builder builder, final PeerSpec configuredPeer,
+                                       final List<String> allowedIps) {
+        if (configuredPeer != null && configuredPeer.getAllowedIPs() != null) {
+            // The device reports networks canonically, so compare them that way.
+            final Set<String> configuredNetworks =
+                    canonicalizeNetworks(Arrays.asList(configuredPeer.getAllowedIPs().split(",")));
+            if (configuredNetworks != null
+                    && configuredNetworks.equals(canonicalizeNetworks(allowedIps)))
+                return builder.setAllowedIPs(configuredPeer.getAllowedIPs()).build();
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final String allowedIp : allowedIps)
+            sb.append(sb.length() > 0 ? ", " : "").append(allowedIp);
+        return builder.setAllowedIPs(sb.toString()).build();
+    }
+}
@@ -0,0 +1,129 @@
+package com.wireguard.android.backend;
+
+import com.wireguard.crypto.Key;
+import com.wireguard.crypto.KeyEncoding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes WireGuard UAPI {@code key=value} settings as ASCII directly into a direct
+ * {@link ByteBuffer}, which native code can read in place without any further copies.
+ */
+
+final class UapiWriter {
+    private static final byte[] ZERO_KEY_HEX = new byte[KeyEncoding.KEY_LENGTH_HEX];
+
+    static {
+        KeyEncoding.keyToHex(new byte[KeyEncoding.KEY_LENGTH], 0, ByteBuffer.wrap(ZERO_KEY_HEX));
+    }
+
+    private ByteBuffer buffer;
+
+    UapiWriter(final int initialCapacity) {
+        buffer = ByteBuffer.allocateDirect(Math.max(initialCapacity, 64));
+    }
+
+    /**
+     * Returns the buffer holding the settings written so far, from index 0 to {@link #length()}.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    private void ensureRemaining(final int count) {
+        if (buffer.remaining() >= count)
+            return;
+        final ByteBuffer larger = ByteBuffer.allocateDirect(
+                Math.max(buffer.capacity() * 2, buffer.position() + count));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    int length() {
+        return buffer.position();
+    }
+
+    private void putName(final String name, final int valueLength) {
+        ensureRemaining(name.length() + valueLength + 2);
+        for (int i = 0; i < name.length(); ++i)
+            buffer.put((byte) name.charAt(i));
+        buffer.put((byte) '=');
+    }
+
+    /**
+     * Writes one {@code allowed_ip} line for each entry in a comma-separated list.
+     */
+    UapiWriter writeAllowedIps(final String allowedIps) {
+        final int length = allowedIps.length();
+        int start = 0;
+        while (start < length) {
+            int end = allowedIps.indexOf(',', start);
+            if (end < 0)
+                end = length;
+            int first = start;
+            int last = end;
+            while (first < last && allowedIps.charAt(first) == ' ')
+                ++first;
+            while (last > first && allowedIps.charAt(last - 1) == ' ')
+                --last;
+            if (first < last)
+                write("allowed_ip", allowedIps, first, last);
+            start = end + 1;
+        }
+        return this;
+    }
+
+    UapiWriter write(final String name, final boolean value) {
+        return write(name, value ? "true" : "false");
+    }
+
+    /**
+     * Writes a key as hex, or the all-zero key (which unsets it) if {@code key} is null.
+     */
+    UapiWriter write(final String name, final Key key) {
+        putName(name, KeyEncoding.KEY_LENGTH_HEX);
+        if (key != null)
+            key.writeHex(buffer);
+        else
+            buffer.put(ZERO_KEY_HEX);
+        buffer.put((byte) '\n');
+        return this;
+    }
+
+    /**
+     * Writes a non-negative decimal number.
+     */
+    UapiWriter write(final String name, final long value) {
+        putName(name, 19);
+        long divisor = 1;
+        while (value / divisor >= 10)
+            divisor *= 10;
+        for (; divisor > 0; divisor /= 10)
+            buffer.put((byte) ('0' + value / divisor % 10));
+        buffer.put((byte) '\n');
+        return this;
+    }
+
+    UapiWriter write(final String name, final String value) {
+        return write(name, value, 0, value.length());
+    }
+
+    private UapiWriter write(final String name, final String value, final int start, final int end) {
+        boolean isAscii = true;
+        for (int i = start; i < end && isAscii; ++i)
+            isAscii = value.charAt(i) < 0x80;
+        if (isAscii) {
+            putName(name, end - start);
+            for (int i = start; i < end; ++i)
+                buffer.put((byte) value.charAt(i));
+        } else {
+            final byte[] bytes = value.substring(start, end).getBytes(StandardCharsets.UTF_8);
+            putName(name, bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.put((byte) '\n');
+        return this;
+    }
+}
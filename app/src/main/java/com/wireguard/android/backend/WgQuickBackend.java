@@ -1,21 +1,30 @@
 package com.wireguard.android.backend;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.wireguard.android.backend.DumpParser.PeerStatistics;
 import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.Tunnel.State;
 import com.wireguard.android.model.Tunnel.Statistics;
 import com.wireguard.android.util.RootShell;
 import com.wireguard.android.util.ToolsInstaller;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigDiff;
+import com.wireguard.config.ConfigSpec;
+import com.wireguard.config.InterfaceSpec;
+import com.wireguard.config.PeerSpec;
+import com.wireguard.crypto.Key;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import java9.util.stream.Collectors;
@@ -23,25 +32,72 @@ import java9.util.stream.Stream;
 
 /**
  * WireGuard backend that uses {@code wg-quick} to implement tunnel configuration.
+ *
+ * The set of running interfaces is kept as a snapshot shared by all callers, so that checking
+ * the state of every tunnel costs a single {@code wg show interfaces}. The snapshot is updated
+ * by this backend's own state changes and dropped whenever the {@link LinkMonitor} reports a
+ * link change. If the monitor is unavailable, the snapshot is only trusted for a short time.
+ *
+ * Statistics for all tunnels are likewise read with one {@code wg show all dump} per refresh,
+ * however many tunnels ask for them.
  */
 
 public final class WgQuickBackend implements Backend {
+    private static final long MAX_DUMP_AGE_MS = 1000;
+    private static final long MAX_UNMONITORED_SNAPSHOT_AGE_MS = 1000;
     private static final String TAG = "WireGuard/" + WgQuickBackend.class.getSimpleName();
 
+    private final Object dumpLock = new Object();
+    private final LinkMonitor linkMonitor;
     private final File localTemporaryDir;
+    private final Object refreshLock = new Object();
     private final RootShell rootShell;
+    private final Object snapshotLock = new Object();
     private final ToolsInstaller toolsInstaller;
+    private Map<String, Map<Key, PeerStatistics>> dump;
+    private long dumpTime;
+    private Set<String> snapshot;
+    private long snapshotTime;
+    private int snapshotVersion;
 
     public WgQuickBackend(final Context context, final RootShell rootShell,
                           final ToolsInstaller toolsInstaller) {
+        linkMonitor = new LinkMonitor(rootShell, this::invalidateSnapshot);
         localTemporaryDir = new File(context.getCacheDir(), "tmp");
         this.rootShell = rootShell;
         this.toolsInstaller = toolsInstaller;
     }
 
+    private static String quote(final String value) {
+        return '\'' + value.replace("'", "'\\''") + '\'';
+    }
+
     @Override
-    public Config applyConfig(final Tunnel tunnel, final Config config) throws Exception {
+    public ConfigSpec applyConfig(final Tunnel tunnel, final ConfigSpec config) throws Exception {
+        // Operations on one tunnel are serialized; different tunnels proceed independently.
+        synchronized (tunnel) {
+            return applyConfigLocked(tunnel, config);
+        }
+    }
+
+    private ConfigSpec applyConfigLocked(final Tunnel tunnel, final ConfigSpec config)
+            throws Exception {
         if (tunnel.getState() == State.UP) {
+            final ConfigDiff diff = ConfigDiff.between(tunnel.getConfig(), config);
+            if (diff.isEmpty())
+                return config;
+            // Update the running interface without recreating it, so no packets are lost.
+            if (diff.arePeersMatchable()) {
+                try {
+                    updateInPlace(tunnel, diff);
+                    // wg-quick installs a route for each allowed IP, so those may need updating.
+                    if (diff.isNetworkChanged() || diff.isAllowedIPsChanged())
+                        syncNetwork(tunnel, config);
+                    return config;
+                } catch (final Exception e) {
+                    Log.w(TAG, "Unable to update tunnel " + tunnel.getName() + " in place", e);
+                }
+            }
             // Restart the tunnel to apply the new config.
             setStateInternal(tunnel, tunnel.getConfig(), State.DOWN);
             try {
@@ -55,20 +111,60 @@ public final class WgQuickBackend implements Backend {
         return config;
     }
 
+    private void appendPeer(final StringBuilder command, final List<File> keyFiles,
+                            final String name, final PeerSpec peer) throws IOException {
+        command.append(" peer ").append(quote(peer.getPublicKey()));
+        if (peer.getEndpoint() != null)
+            command.append(" endpoint ").append(quote(peer.getEndpoint()));
+        command.append(" persistent-keepalive ").append(peer.getPersistentKeepalive() != null
+                ? quote(peer.getPersistentKeepalive()) : "off");
+        command.append(" allowed-ips ").append(quote(peer.getAllowedIPs() != null
+                ? peer.getAllowedIPs().replace(" ", "") : ""));
+        command.append(" preshared-key ")
+                .append(quote(writeKeyFile(keyFiles, name, peer.getPreSharedKey())));
+    }
+
     @Override
     public Set<String> enumerate() {
-        final List<String> output = new ArrayList<>();
-        // Don't throw an exception here or nothing will show up in the UI.
-        try {
-            toolsInstaller.ensureToolsAvailable();
-            if (rootShell.run(output, "wg show interfaces") != 0 || output.isEmpty())
+        final Set<String> cached = getSnapshot();
+        if (cached != null)
+            return cached;
+        synchronized (refreshLock) {
+            // Another thread may have refreshed the snapshot while this one was waiting.
+            final Set<String> refreshed = getSnapshot();
+            if (refreshed != null)
+                return refreshed;
+            final int version;
+            synchronized (snapshotLock) {
+                version = snapshotVersion;
+            }
+            linkMonitor.start();
+            final long time = SystemClock.elapsedRealtime();
+            final Set<String> running = readRunningTunnels();
+            // Don't throw an exception here or nothing will show up in the UI.
+            if (running == null)
                 return Collections.emptySet();
-        } catch (final Exception e) {
-            Log.w(TAG, "Unable to enumerate running tunnels", e);
-            return Collections.emptySet();
+            synchronized (snapshotLock) {
+                // Discard the result if something changed while wg was running.
+                if (version == snapshotVersion) {
+                    snapshot = running;
+                    snapshotTime = time;
+                }
+            }
+            return running;
+        }
+    }
+
+    private Set<String> getSnapshot() {
+        synchronized (snapshotLock) {
+            if (snapshot == null)
+                return null;
+            if (linkMonitor.isWatchingSince(snapshotTime)
+                    || SystemClock.elapsedRealtime() - snapshotTime < MAX_UNMONITORED_SNAPSHOT_AGE_MS)
+                return snapshot;
+            snapshot = null;
+            return null;
         }
-        // wg puts all interface names on the same line. Split them into separate elements.
-        return Stream.of(output.get(0).split(" ")).collect(Collectors.toUnmodifiableSet());
     }
 
     @Override
@@ -76,39 +172,199 @@ public final class WgQuickBackend implements Backend {
         return enumerate().contains(tunnel.getName()) ? State.UP : State.DOWN;
     }
 
+    /**
+     * Returns the peers of every running interface, reading them from wg if the last dump is
+     * older than one refresh. Callers that arrive during a read wait for it and share its result.
+     */
+    private Map<String, Map<Key, PeerStatistics>> getDump() throws Exception {
+        synchronized (dumpLock) {
+            final long time = SystemClock.elapsedRealtime();
+            if (dump != null && time - dumpTime < MAX_DUMP_AGE_MS)
+                return dump;
+            final int version;
+            synchronized (snapshotLock) {
+                version = snapshotVersion;
+            }
+            toolsInstaller.ensureToolsAvailable();
+            final DumpParser parser = new DumpParser();
+            final int result = rootShell.runStreaming(null, parser, "wg show all dump", null);
+            if (result != 0)
+                throw new Exception("Unable to read statistics (wg returned " + result + ')');
+            dump = parser.getInterfaces();
+            dumpTime = time;
+            // The dump lists every running interface, so it also refreshes the snapshot.
+            synchronized (snapshotLock) {
+                if (version == snapshotVersion) {
+                    snapshot = Collections.unmodifiableSet(new HashSet<>(dump.keySet()));
+                    snapshotTime = time;
+                }
+            }
+            return dump;
+        }
+    }
+
     @Override
-    public Statistics getStatistics(final Tunnel tunnel) {
-        return new Statistics();
+    public Statistics getStatistics(final Tunnel tunnel) throws Exception {
+        final ConfigSpec config = tunnel.getConfig();
+        if (config == null)
+            return new Statistics();
+        final Map<Key, PeerStatistics> running = getDump().get(tunnel.getName());
+        if (running == null)
+            return new Statistics();
+        final List<PeerSpec> peers = config.getPeers();
+        final Statistics statistics = new Statistics(peers.size());
+        for (int i = 0; i < peers.size(); ++i) {
+            final Key key = peers.get(i).getDecodedPublicKey();
+            final PeerStatistics peer = key != null ? running.get(key) : null;
+            if (peer == null)
+                continue;
+            statistics.setPeer(i, peer.rxBytes, peer.txBytes, peer.lastHandshakeTime);
+            statistics.setEndpoint(i, peer.endpoint);
+        }
+        return statistics;
     }
 
     @Override
-    public State setState(final Tunnel tunnel, State state) throws Exception {
+    public State setState(final Tunnel tunnel, final State state) throws Exception {
+        synchronized (tunnel) {
+            return setStateLocked(tunnel, state);
+        }
+    }
+
+    private State setStateLocked(final Tunnel tunnel, State state) throws Exception {
         final State originalState = getState(tunnel);
         if (state == State.TOGGLE)
             state = originalState == State.UP ? State.DOWN : State.UP;
         if (state == originalState)
             return originalState;
         Log.d(TAG, "Changing tunnel " + tunnel.getName() + " to state " + state);
+        final long startTime = SystemClock.elapsedRealtime();
         toolsInstaller.ensureToolsAvailable();
         setStateInternal(tunnel, tunnel.getConfig(), state);
+        Log.d(TAG, "Changed tunnel " + tunnel.getName() + " to state " + state + " in " +
+                (SystemClock.elapsedRealtime() - startTime) + " ms");
         return getState(tunnel);
     }
 
-    private void setStateInternal(final Tunnel tunnel, final Config config, final State state)
-            throws Exception {
-        final File tempFile = new File(localTemporaryDir, tunnel.getName() + ".conf");
-        final int result;
-        if (state == State.UP) {
-            try (FileOutputStream stream = new FileOutputStream(tempFile, false)) {
-                stream.write(config.toString().getBytes(StandardCharsets.UTF_8));
-            }
-            result = rootShell.run(null, "wg-quick up '" + tempFile.getAbsolutePath() + '\'');
-        } else {
-            result = rootShell.run(null, "wg-quick down '" + tempFile.getAbsolutePath() + '\'');
-            if (result == 0 && !tempFile.delete())
-                Log.w(TAG, "Couldn't delete temp config after bringing down " + tunnel.getName());
+    private void invalidateSnapshot() {
+        synchronized (snapshotLock) {
+            snapshot = null;
+            ++snapshotVersion;
+        }
+    }
+
+    /**
+     * Record a state change made by this backend, so the snapshot does not need to be re-read.
+     */
+    private void onTransition(final String name, final State state) {
+        synchronized (snapshotLock) {
+            ++snapshotVersion;
+            if (snapshot == null)
+                return;
+            final Set<String> running = new HashSet<>(snapshot);
+            if (state == State.UP)
+                running.add(name);
+            else
+                running.remove(name);
+            snapshot = Collections.unmodifiableSet(running);
+        }
+    }
+
+    private Set<String> readRunningTunnels() {
+        final List<String> output = new ArrayList<>();
+        try {
+            toolsInstaller.ensureToolsAvailable();
+            if (rootShell.run(output, "wg show interfaces") != 0)
+                return null;
+        } catch (final Exception e) {
+            Log.w(TAG, "Unable to enumerate running tunnels", e);
+            return null;
         }
+        if (output.isEmpty() || output.get(0).isEmpty())
+            return Collections.emptySet();
+        // wg puts all interface names on the same line. Split them into separate elements.
+        return Stream.of(output.get(0).split(" ")).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Bring the addresses, DNS servers, routes, and MTU of a running interface in line with
+     * {@code config} and its current peers. {@code wg-quick sync} only changes what differs.
+     */
+    private void syncNetwork(final Tunnel tunnel, final ConfigSpec config) throws Exception {
+        final int result = rootShell.run(tunnel.getName(), null,
+                "wg-quick sync " + quote(tunnel.getName()) + " -", config.toString());
         if (result != 0)
+            throw new Exception("Unable to update tunnel (wg-quick returned " + result + ')');
+    }
+
+    /**
+     * Apply the WireGuard-level changes in {@code diff} to a running interface with a single
+     * {@code wg set} command, leaving existing sessions, addresses, and routes in place.
+     */
+    private void updateInPlace(final Tunnel tunnel, final ConfigDiff diff) throws Exception {
+        if (!diff.isPrivateKeyChanged() && !diff.isListenPortChanged()
+                && diff.getAddedPeers().isEmpty() && diff.getModifiedPeers().isEmpty()
+                && diff.getRemovedPeers().isEmpty())
+            return;
+        final String name = tunnel.getName();
+        final List<File> keyFiles = new ArrayList<>();
+        final StringBuilder command = new StringBuilder("wg set ").append(quote(name));
+        try {
+            final InterfaceSpec iface = diff.getNewInterface();
+            if (diff.isPrivateKeyChanged())
+                command.append(" private-key ")
+                        .append(quote(writeKeyFile(keyFiles, name, iface.getPrivateKey())));
+            if (diff.isListenPortChanged())
+                command.append(" listen-port ").append(iface.getListenPort() != null
+                        ? quote(iface.getListenPort()) : "0");
+            for (final PeerSpec peer : diff.getRemovedPeers())
+                command.append(" peer ").append(quote(peer.getPublicKey())).append(" remove");
+            for (final PeerSpec peer : diff.getAddedPeers())
+                appendPeer(command, keyFiles, name, peer);
+            for (final PeerSpec peer : diff.getModifiedPeers())
+                appendPeer(command, keyFiles, name, peer);
+            final int result = rootShell.run(name, null, command.toString(), null);
+            if (result != 0)
+                throw new Exception("Unable to update tunnel (wg returned " + result + ')');
+        } finally {
+            for (final File file : keyFiles) {
+                if (!file.delete())
+                    Log.w(TAG, "Couldn't delete temporary key file " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * wg(8) only accepts keys from files, so stage them in the private temporary directory. A
+     * missing key is given as {@code /dev/null}, which clears it.
+     */
+    private String writeKeyFile(final List<File> keyFiles, final String name, final String key)
+            throws IOException {
+        if (key == null)
+            return "/dev/null";
+        final File file = new File(localTemporaryDir, name + '.' + keyFiles.size() + ".key");
+        keyFiles.add(file);
+        try (FileOutputStream stream = new FileOutputStream(file, false)) {
+            stream.write(key.getBytes(StandardCharsets.UTF_8));
+        }
+        return file.getAbsolutePath();
+    }
+
+    private void setStateInternal(final Tunnel tunnel, final ConfigSpec config, final State state)
+            throws Exception {
+        // The configuration is piped to wg-quick, so it is never written to storage.
+        final String name = quote(tunnel.getName());
+        final int result;
+        if (state == State.UP)
+            result = rootShell.run(tunnel.getName(), null, "wg-quick up " + name + " -",
+                    config.toString());
+        else
+            result = rootShell.run(tunnel.getName(), null, "wg-quick down " + name, null);
+        if (result != 0) {
+            // wg-quick may have gotten partway, so the running set is no longer known.
+            invalidateSnapshot();
             throw new Exception("Unable to configure tunnel (wg-quick returned " + result + ')');
+        }
+        onTransition(tunnel.getName(), state);
     }
 }
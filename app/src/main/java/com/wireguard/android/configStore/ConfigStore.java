@@ -1,6 +1,6 @@
 package com.wireguard.android.configStore;
 
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.util.Set;
 
@@ -17,7 +17,7 @@ public interface ConfigStore {
      * @param config Configuration for the new tunnel.
      * @return The configuration that was actually saved to persistent storage.
      */
-    Config create(final String name, final Config config) throws Exception;
+    ConfigSpec create(final String name, final ConfigSpec config) throws Exception;
 
     /**
      * Delete a persistent tunnel.
@@ -40,7 +40,7 @@ public interface ConfigStore {
      *             tunnel).
      * @return An in-memory representation of the configuration loaded from persistent storage.
      */
-    Config load(final String name) throws Exception;
+    ConfigSpec load(final String name) throws Exception;
 
     /**
      * Rename the configuration for the tunnel given by {@code name}.
@@ -58,5 +58,5 @@ public interface ConfigStore {
      * @param config An updated configuration object for the tunnel.
      * @return The configuration that was actually saved to persistent storage.
      */
-    Config save(final String name, final Config config) throws Exception;
+    ConfigSpec save(final String name, final ConfigSpec config) throws Exception;
 }
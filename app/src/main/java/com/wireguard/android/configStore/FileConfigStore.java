@@ -4,7 +4,7 @@ import android.content.Context;
 import android.util.Log;
 
 import com.wireguard.android.Application.ApplicationContext;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -31,7 +31,7 @@ public final class FileConfigStore implements ConfigStore {
     }
 
     @Override
-    public Config create(final String name, final Config config) throws IOException {
+    public ConfigSpec create(final String name, final ConfigSpec config) throws IOException {
         Log.d(TAG, "Creating configuration for tunnel " + name);
         final File file = fileFor(name);
         if (!file.createNewFile())
@@ -63,9 +63,9 @@ public final class FileConfigStore implements ConfigStore {
     }
 
     @Override
-    public Config load(final String name) throws IOException {
+    public ConfigSpec load(final String name) throws IOException {
         try (FileInputStream stream = new FileInputStream(fileFor(name))) {
-            return Config.from(stream);
+            return ConfigSpec.from(stream);
         }
     }
 
@@ -84,7 +84,7 @@ public final class FileConfigStore implements ConfigStore {
     }
 
     @Override
-    public Config save(final String name, final Config config) throws IOException {
+    public ConfigSpec save(final String name, final ConfigSpec config) throws IOException {
         Log.d(TAG, "Saving configuration for tunnel " + name);
         final File file = fileFor(name);
         if (!file.isFile())
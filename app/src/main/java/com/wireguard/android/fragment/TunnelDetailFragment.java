@@ -1,5 +1,7 @@
 package com.wireguard.android.fragment;
 
+import android.databinding.Observable;
+import android.databinding.Observable.OnPropertyChangedCallback;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -7,18 +9,44 @@ import android.view.MenuInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.wireguard.android.BR;
 import com.wireguard.android.R;
 import com.wireguard.android.databinding.TunnelDetailFragmentBinding;
 import com.wireguard.android.model.Tunnel;
+import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 /**
  * Fragment that shows details about a specific tunnel.
  */
 
 public class TunnelDetailFragment extends BaseFragment {
+    private final OnConfigChangedCallback onConfigChangedCallback = new OnConfigChangedCallback();
     private TunnelDetailFragmentBinding binding;
     private boolean isViewStateRestored;
 
+    private void bindTunnel(final Tunnel tunnel) {
+        final Tunnel oldTunnel = binding.getTunnel();
+        if (oldTunnel != null)
+            oldTunnel.removeOnPropertyChangedCallback(onConfigChangedCallback);
+        binding.setTunnel(tunnel);
+        binding.setConfig(null);
+        if (tunnel != null) {
+            tunnel.addOnPropertyChangedCallback(onConfigChangedCallback);
+            loadConfig(tunnel);
+        }
+    }
+
+    private void loadConfig(final Tunnel tunnel) {
+        tunnel.getConfigAsync().thenAccept(config -> onConfigLoaded(tunnel, config));
+    }
+
+    private void onConfigLoaded(final Tunnel tunnel, final ConfigSpec config) {
+        // The selected tunnel may have changed while its configuration was loading.
+        if (binding != null && binding.getTunnel() == tunnel)
+            binding.setConfig(new Config(config));
+    }
+
     @Override
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -41,6 +69,8 @@ public class TunnelDetailFragment extends BaseFragment {
 
     @Override
     public void onDestroyView() {
+        if (binding != null && binding.getTunnel() != null)
+            binding.getTunnel().removeOnPropertyChangedCallback(onConfigChangedCallback);
         binding = null;
         super.onDestroyView();
     }
@@ -48,13 +78,27 @@ public class TunnelDetailFragment extends BaseFragment {
     @Override
     public void onSelectedTunnelChanged(final Tunnel oldTunnel, final Tunnel newTunnel) {
         if (binding != null && isViewStateRestored)
-            binding.setTunnel(newTunnel);
+            bindTunnel(newTunnel);
     }
 
     @Override
     public void onViewStateRestored(final Bundle savedInstanceState) {
         super.onViewStateRestored(savedInstanceState);
-        binding.setTunnel(getSelectedTunnel());
+        bindTunnel(getSelectedTunnel());
         isViewStateRestored = true;
     }
+
+    /**
+     * Reloads the displayed configuration when the tunnel's configuration is saved or reloaded,
+     * since the view shows a copy of it rather than binding the tunnel's own.
+     */
+    private final class OnConfigChangedCallback extends OnPropertyChangedCallback {
+        @Override
+        public void onPropertyChanged(final Observable sender, final int propertyId) {
+            if (propertyId != 0 && propertyId != BR.config)
+                return;
+            if (binding != null && binding.getTunnel() == sender)
+                loadConfig((Tunnel) sender);
+        }
+    }
 }
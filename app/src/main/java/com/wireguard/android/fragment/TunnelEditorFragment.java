@@ -4,8 +4,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.databinding.ObservableField;
 import android.os.Bundle;
-import android.os.Parcel;
-import android.os.Parcelable;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -24,6 +22,7 @@ import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.TunnelManager;
 import com.wireguard.android.util.ExceptionLoggers;
 import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 /**
  * Fragment for editing a WireGuard configuration.
@@ -42,24 +41,13 @@ public class TunnelEditorFragment extends BaseFragment {
     private Tunnel localTunnel;
     private String originalName;
 
-    private static <T extends Parcelable> T copyParcelable(final T original) {
-        if (original == null)
-            return null;
-        final Parcel parcel = Parcel.obtain();
-        parcel.writeParcelable(original, 0);
-        parcel.setDataPosition(0);
-        final T copy = parcel.readParcelable(original.getClass().getClassLoader());
-        parcel.recycle();
-        return copy;
-    }
-
-    private void onConfigLoaded(final Config config) {
-        localConfig = copyParcelable(config);
+    private void onConfigLoaded(final ConfigSpec config) {
+        localConfig = new Config(config);
         if (binding != null && isViewStateRestored)
             binding.setConfig(localConfig);
     }
 
-    private void onConfigSaved(@SuppressWarnings("unused") final Config config,
+    private void onConfigSaved(@SuppressWarnings("unused") final ConfigSpec config,
                                final Throwable throwable) {
         final String message;
         if (throwable == null) {
@@ -150,7 +138,7 @@ public class TunnelEditorFragment extends BaseFragment {
                 if (selectedTunnel == null) {
                     Log.d(TAG, "Attempting to create new tunnel " + localName.get());
                     final TunnelManager manager = Application.getComponent().getTunnelManager();
-                    manager.create(localName.get(), localConfig)
+                    manager.create(localName.get(), localConfig.toSpec())
                             .whenComplete(this::onTunnelCreated);
                 } else if (!selectedTunnel.getName().equals(localName.get())) {
                     Log.d(TAG, "Attempting to rename tunnel to " + localName.get());
@@ -158,7 +146,7 @@ public class TunnelEditorFragment extends BaseFragment {
                             .whenComplete(this::onTunnelRenamed);
                 } else if (localConfig != null) {
                     Log.d(TAG, "Attempting to save config of " + selectedTunnel.getName());
-                    selectedTunnel.setConfig(localConfig)
+                    selectedTunnel.setConfig(localConfig.toSpec())
                             .whenComplete(this::onConfigSaved);
                 }
                 return true;
@@ -219,7 +207,7 @@ public class TunnelEditorFragment extends BaseFragment {
             Log.d(TAG, message);
             // Now save the rest of configuration changes.
             Log.d(TAG, "Attempting to save config of renamed tunnel " + localTunnel.getName());
-            localTunnel.setConfig(localConfig).whenComplete(this::onConfigSaved);
+            localTunnel.setConfig(localConfig.toSpec()).whenComplete(this::onConfigSaved);
         } else {
             final String error = ExceptionLoggers.unwrap(throwable).getMessage();
             message = getString(R.string.tunnel_rename_error, error);
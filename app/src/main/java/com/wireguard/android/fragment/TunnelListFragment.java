@@ -36,7 +36,7 @@ import com.wireguard.android.model.Tunnel;
 import com.wireguard.android.model.TunnelManager;
 import com.wireguard.android.util.AsyncWorker;
 import com.wireguard.android.util.ExceptionLoggers;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.util.List;
 
@@ -83,7 +83,7 @@ public class TunnelListFragment extends BaseFragment {
             Log.d(TAG, "Import mapped URI " + uri + " to tunnel name " + name);
             return name;
         });
-        asyncWorker.supplyAsync(() -> Config.from(contentResolver.openInputStream(uri)))
+        asyncWorker.supplyAsync(() -> ConfigSpec.from(contentResolver.openInputStream(uri)))
                 .thenCombine(nameStage, (config, name) -> tunnelManager.create(name, config))
                 .thenCompose(Function.identity())
                 .whenComplete(this::onTunnelImportFinished);
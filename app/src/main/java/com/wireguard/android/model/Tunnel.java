@@ -8,7 +8,7 @@ import android.support.annotation.Nullable;
 import com.wireguard.android.BR;
 import com.wireguard.android.util.ExceptionLoggers;
 import com.wireguard.android.util.Keyed;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.util.regex.Pattern;
 
@@ -24,13 +24,13 @@ public class Tunnel extends BaseObservable implements Keyed<String> {
     private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_=+.-]{1,15}");
 
     private final TunnelManager manager;
-    private Config config;
+    private ConfigSpec config;
     private String name;
     private State state;
     private Statistics statistics;
 
     Tunnel(@NonNull final TunnelManager manager, @NonNull final String name,
-           @Nullable final Config config, @NonNull final State state) {
+           @Nullable final ConfigSpec config, @NonNull final State state) {
         this.manager = manager;
         this.name = name;
         this.config = config;
@@ -46,13 +46,13 @@ public class Tunnel extends BaseObservable implements Keyed<String> {
     }
 
     @Bindable
-    public Config getConfig() {
+    public ConfigSpec getConfig() {
         if (config == null)
             manager.getTunnelConfig(this).whenComplete(ExceptionLoggers.E);
         return config;
     }
 
-    public CompletionStage<Config> getConfigAsync() {
+    public CompletionStage<ConfigSpec> getConfigAsync() {
         if (config == null)
             return manager.getTunnelConfig(this);
         return CompletableFuture.completedFuture(config);
@@ -92,7 +92,7 @@ public class Tunnel extends BaseObservable implements Keyed<String> {
         return CompletableFuture.completedFuture(statistics);
     }
 
-    Config onConfigChanged(final Config config) {
+    ConfigSpec onConfigChanged(final ConfigSpec config) {
         this.config = config;
         notifyPropertyChanged(BR.config);
         return config;
@@ -118,7 +118,9 @@ public class Tunnel extends BaseObservable implements Keyed<String> {
         return statistics;
     }
 
-    public CompletionStage<Config> setConfig(@NonNull final Config config) {
+    public CompletionStage<ConfigSpec> setConfig(@NonNull final ConfigSpec config) {
+        // Configurations compare by value, so saving an unchanged one touches neither the backend
+        // nor the disk.
         if (!config.equals(this.config))
             return manager.setTunnelConfig(this, config);
         return CompletableFuture.completedFuture(this.config);
@@ -146,6 +148,77 @@ public class Tunnel extends BaseObservable implements Keyed<String> {
         }
     }
 
+    /**
+     * Traffic counters for a running tunnel. Peers are identified by their position in the
+     * tunnel's configuration.
+     */
     public static class Statistics extends BaseObservable {
+        private final String[] endpoints;
+        private final long[] lastHandshakeTimes;
+        private final long[] rxBytes;
+        private final long[] txBytes;
+
+        public Statistics() {
+            this(0);
+        }
+
+        public Statistics(final int peerCount) {
+            endpoints = new String[peerCount];
+            lastHandshakeTimes = new long[peerCount];
+            rxBytes = new long[peerCount];
+            txBytes = new long[peerCount];
+        }
+
+        /**
+         * Returns the address the peer was last seen at, or null if it is not known.
+         */
+        public String getEndpoint(final int peer) {
+            return endpoints[peer];
+        }
+
+        /**
+         * Returns the time of the peer's last handshake in milliseconds since the epoch, or 0 if
+         * it has never completed one.
+         */
+        public long getLastHandshakeTime(final int peer) {
+            return lastHandshakeTimes[peer];
+        }
+
+        public int getPeerCount() {
+            return rxBytes.length;
+        }
+
+        public long getRxBytes(final int peer) {
+            return rxBytes[peer];
+        }
+
+        public long getTotalRxBytes() {
+            long total = 0;
+            for (final long bytes : rxBytes)
+                total += bytes;
+            return total;
+        }
+
+        public long getTotalTxBytes() {
+            long total = 0;
+            for (final long bytes : txBytes)
+                total += bytes;
+            return total;
+        }
+
+        public long getTxBytes(final int peer) {
+            return txBytes[peer];
+        }
+
+        public void setPeer(final int peer, final long rxBytes, final long txBytes,
+                            final long lastHandshakeTime) {
+            this.rxBytes[peer] = rxBytes;
+            this.txBytes[peer] = txBytes;
+            lastHandshakeTimes[peer] = lastHandshakeTime;
+        }
+
+        public void setEndpoint(final int peer, final String endpoint) {
+            endpoints[peer] = endpoint;
+        }
     }
 }
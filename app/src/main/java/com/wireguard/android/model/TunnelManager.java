@@ -16,7 +16,7 @@ import com.wireguard.android.util.ExceptionLoggers;
 import com.wireguard.android.util.ObservableKeyedList;
 import com.wireguard.android.util.ObservableSortedKeyedArrayList;
 import com.wireguard.android.util.ObservableSortedKeyedList;
-import com.wireguard.config.Config;
+import com.wireguard.config.ConfigSpec;
 
 import java.util.Collection;
 import java.util.Comparator;
@@ -59,13 +59,13 @@ public final class TunnelManager extends BaseObservable {
         this.preferences = preferences;
     }
 
-    private Tunnel addToList(final String name, final Config config, final State state) {
+    private Tunnel addToList(final String name, final ConfigSpec config, final State state) {
         final Tunnel tunnel = new Tunnel(this, name, config, state);
         tunnels.add(tunnel);
         return tunnel;
     }
 
-    public CompletionStage<Tunnel> create(@NonNull final String name, final Config config) {
+    public CompletionStage<Tunnel> create(@NonNull final String name, final ConfigSpec config) {
         if (!Tunnel.isNameValid(name))
             return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid name"));
         if (tunnels.containsKey(name)) {
@@ -109,7 +109,7 @@ public final class TunnelManager extends BaseObservable {
         return lastUsedTunnel;
     }
 
-    CompletionStage<Config> getTunnelConfig(final Tunnel tunnel) {
+    CompletionStage<ConfigSpec> getTunnelConfig(final Tunnel tunnel) {
         return asyncWorker.supplyAsync(() -> configStore.load(tunnel.getName()))
                 .thenApply(tunnel::onConfigChanged);
     }
@@ -150,7 +150,9 @@ public final class TunnelManager extends BaseObservable {
             return CompletableFuture.completedFuture(null);
         return CompletableFuture.allOf(StreamSupport.stream(tunnels)
                 .filter(tunnel -> previouslyRunning.contains(tunnel.getName()))
-                .map(tunnel -> setTunnelState(tunnel, State.UP))
+                // Start the tunnels in parallel, so that restoring them takes about as long as
+                // the slowest one rather than all of them together.
+                .map(tunnel -> setTunnelState(tunnel, State.UP, true))
                 .toArray(CompletableFuture[]::new));
     }
 
@@ -173,9 +175,9 @@ public final class TunnelManager extends BaseObservable {
             preferences.edit().remove(KEY_LAST_USED_TUNNEL).apply();
     }
 
-    CompletionStage<Config> setTunnelConfig(final Tunnel tunnel, final Config config) {
+    CompletionStage<ConfigSpec> setTunnelConfig(final Tunnel tunnel, final ConfigSpec config) {
         return asyncWorker.supplyAsync(() -> {
-            final Config appliedConfig = backend.applyConfig(tunnel, config);
+            final ConfigSpec appliedConfig = backend.applyConfig(tunnel, config);
             return configStore.save(tunnel.getName(), appliedConfig);
         }).thenApply(tunnel::onConfigChanged);
     }
@@ -213,9 +215,19 @@ public final class TunnelManager extends BaseObservable {
     }
 
     CompletionStage<State> setTunnelState(final Tunnel tunnel, final State state) {
+        return setTunnelState(tunnel, state, false);
+    }
+
+    /**
+     * Backends serialize the operations on each tunnel themselves, so state changes may run in
+     * parallel with other work when {@code inParallel} is set.
+     */
+    private CompletionStage<State> setTunnelState(final Tunnel tunnel, final State state,
+                                                  final boolean inParallel) {
         // Ensure the configuration is loaded before trying to use it.
-        return tunnel.getConfigAsync().thenCompose(x ->
-                asyncWorker.supplyAsync(() -> backend.setState(tunnel, state))
+        return tunnel.getConfigAsync().thenCompose(x -> inParallel
+                ? asyncWorker.supplyParallelAsync(() -> backend.setState(tunnel, state))
+                : asyncWorker.supplyAsync(() -> backend.setState(tunnel, state))
         ).whenComplete((newState, e) -> {
             // Ensure onStateChanged is always called (failure or not), and with the correct state.
             tunnel.onStateChanged(e == null ? newState : tunnel.getState());
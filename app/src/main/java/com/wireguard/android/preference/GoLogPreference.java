@@ -0,0 +1,107 @@
+package com.wireguard.android.preference;
+
+import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.preference.Preference;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.wireguard.android.Application;
+import com.wireguard.android.Application.ApplicationComponent;
+import com.wireguard.android.R;
+import com.wireguard.android.backend.GoBackend;
+import com.wireguard.android.util.AsyncWorker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Preference implementing a button that shows the recent log of the userspace WireGuard
+ * implementation, with options to copy it to the clipboard or share it with another app.
+ */
+
+public class GoLogPreference extends Preference {
+    private static final String TAG = "WireGuard/" + GoLogPreference.class.getSimpleName();
+
+    private final AsyncWorker asyncWorker;
+    private final GoBackend backend;
+
+    @SuppressWarnings({"SameParameterValue", "WeakerAccess"})
+    public GoLogPreference(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        final ApplicationComponent applicationComponent = Application.getComponent();
+        asyncWorker = applicationComponent.getAsyncWorker();
+        backend = (GoBackend) applicationComponent.getBackend();
+    }
+
+    public GoLogPreference(final Context context) {
+        this(context, null);
+    }
+
+    private void copyLog(final String log) {
+        final Context context = getContext();
+        final Object service = context.getSystemService(Context.CLIPBOARD_SERVICE);
+        if (!(service instanceof ClipboardManager))
+            return;
+        ((ClipboardManager) service).setPrimaryClip(ClipData.newPlainText(getTitle(), log));
+        Toast.makeText(context, R.string.go_log_copied, Toast.LENGTH_SHORT).show();
+    }
+
+    private String exportLog() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        backend.exportLog(stream);
+        return stream.toString("UTF-8");
+    }
+
+    @Override
+    public CharSequence getSummary() {
+        return getContext().getString(R.string.go_log_summary);
+    }
+
+    @Override
+    public CharSequence getTitle() {
+        return getContext().getString(getTitleRes());
+    }
+
+    @Override
+    public int getTitleRes() {
+        return R.string.go_log_title;
+    }
+
+    @Override
+    protected void onClick() {
+        // Draining the native log may wait for the periodic drain, so keep it off the UI thread.
+        asyncWorker.supplyParallelAsync(this::exportLog).whenComplete(this::onLogExported);
+    }
+
+    private void onLogExported(final String log, final Throwable throwable) {
+        if (throwable != null) {
+            Log.e(TAG, "Unable to export log", throwable);
+            return;
+        }
+        final AlertDialog dialog = new AlertDialog.Builder(getContext())
+                .setTitle(getTitleRes())
+                .setMessage(log.isEmpty() ? getContext().getString(R.string.go_log_empty) : log)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.go_log_copy, (d, which) -> copyLog(log))
+                .setNegativeButton(R.string.go_log_share, (d, which) -> shareLog(log))
+                .show();
+        final TextView message = dialog.findViewById(android.R.id.message);
+        if (message != null)
+            message.setTypeface(Typeface.MONOSPACE);
+    }
+
+    private void shareLog(final String log) {
+        final Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, getTitle())
+                .putExtra(Intent.EXTRA_TEXT, log);
+        getContext().startActivity(Intent.createChooser(intent, getTitle()));
+    }
+}
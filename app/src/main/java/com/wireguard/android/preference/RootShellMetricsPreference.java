@@ -0,0 +1,79 @@
+package com.wireguard.android.preference;
+
+import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.graphics.Typeface;
+import android.preference.Preference;
+import android.util.AttributeSet;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.wireguard.android.Application;
+import com.wireguard.android.R;
+import com.wireguard.android.util.RootShellMetrics;
+
+/**
+ * Preference implementing a button that shows the timings of the commands run as root, with an
+ * option to copy them to the clipboard as JSON.
+ */
+
+public class RootShellMetricsPreference extends Preference {
+    private final RootShellMetrics metrics;
+
+    @SuppressWarnings({"SameParameterValue", "WeakerAccess"})
+    public RootShellMetricsPreference(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        metrics = Application.getComponent().getRootShell().getMetrics();
+    }
+
+    public RootShellMetricsPreference(final Context context) {
+        this(context, null);
+    }
+
+    private void copyJson() {
+        final Context context = getContext();
+        final Object service = context.getSystemService(Context.CLIPBOARD_SERVICE);
+        if (!(service instanceof ClipboardManager))
+            return;
+        ((ClipboardManager) service).setPrimaryClip(
+                ClipData.newPlainText(getTitle(), metrics.getJson()));
+        Toast.makeText(context, R.string.root_shell_metrics_copied, Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public CharSequence getSummary() {
+        final long count = metrics.getCommandCount();
+        return getContext().getResources().getQuantityString(
+                R.plurals.root_shell_metrics_summary, (int) Math.min(count, Integer.MAX_VALUE),
+                count);
+    }
+
+    @Override
+    public CharSequence getTitle() {
+        return getContext().getString(getTitleRes());
+    }
+
+    @Override
+    public int getTitleRes() {
+        return R.string.root_shell_metrics_title;
+    }
+
+    @Override
+    protected void onClick() {
+        final String report = metrics.getReport();
+        final AlertDialog dialog = new AlertDialog.Builder(getContext())
+                .setTitle(getTitleRes())
+                .setMessage(report.isEmpty()
+                        ? getContext().getString(R.string.root_shell_metrics_empty) : report)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.root_shell_metrics_copy, (d, which) -> copyJson())
+                .show();
+        // The numbers in the report line up in a monospace font.
+        final TextView message = dialog.findViewById(android.R.id.message);
+        if (message != null)
+            message.setTypeface(Typeface.MONOSPACE);
+        notifyChanged();
+    }
+}
@@ -1,5 +1,6 @@
 package com.wireguard.android.util;
 
+import android.os.AsyncTask;
 import android.os.Handler;
 
 import com.wireguard.android.Application.ApplicationHandler;
@@ -41,6 +42,11 @@ public class AsyncWorker {
     }
 
     public <T> CompletionStage<T> supplyAsync(final AsyncSupplier<T, ?> supplier) {
+        return supplyAsync(executor, supplier);
+    }
+
+    private <T> CompletionStage<T> supplyAsync(final Executor executor,
+                                               final AsyncSupplier<T, ?> supplier) {
         final CompletableFuture<T> future = new CompletableFuture<>();
         executor.execute(() -> {
             try {
@@ -53,6 +59,26 @@ public class AsyncWorker {
         return future;
     }
 
+    /**
+     * Like {@link #supplyAsync(AsyncSupplier)}, but runs the task on a thread pool instead of in
+     * order with the other tasks, so that independent slow tasks can overlap. The task must
+     * make its own arrangements for any ordering it needs.
+     */
+    public <T> CompletionStage<T> supplyParallelAsync(final AsyncSupplier<T, ?> supplier) {
+        return supplyAsync(AsyncTask.THREAD_POOL_EXECUTOR, supplier);
+    }
+
+    /**
+     * Like {@link #runAsync(AsyncRunnable)}, but runs the task on a thread pool. See
+     * {@link #supplyParallelAsync(AsyncSupplier)}.
+     */
+    public CompletionStage<Void> runParallelAsync(final AsyncRunnable<?> runnable) {
+        return supplyAsync(AsyncTask.THREAD_POOL_EXECUTOR, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
     @FunctionalInterface
     public interface AsyncRunnable<E extends Throwable> {
         void run() throws E;
@@ -0,0 +1,78 @@
+package com.wireguard.android.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values, in the style of HdrHistogram. Values are counted
+ * in buckets that are exact below 8 and then split each power of two into 8 linear steps, so any
+ * reported value is within 12.5% of the recorded one. Readers may see a recording in progress.
+ */
+
+final class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+
+    private static int getIndex(final long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long getHighestValue(final int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    long getMean() {
+        final long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * @return The highest value that could have been recorded in the bucket containing the given
+     * percentile, but no more than the largest value recorded.
+     */
+    long getValueAtPercentile(final double percentile) {
+        final long n = count.get();
+        if (n == 0)
+            return 0;
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(getHighestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    void record(final long value) {
+        final long clamped = Math.max(0, value);
+        counts.incrementAndGet(getIndex(clamped));
+        total.addAndGet(clamped);
+        long previous;
+        while (clamped > (previous = max.get()) && !max.compareAndSet(previous, clamped)) {
+            // Another thread raised the maximum first; try again against its value.
+        }
+        count.incrementAndGet();
+    }
+}
@@ -1,6 +1,7 @@
 package com.wireguard.android.util;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.wireguard.android.Application.ApplicationContext;
@@ -12,43 +13,141 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
+import java9.util.concurrent.CompletableFuture;
+import java9.util.concurrent.CompletionStage;
+
 /**
  * Helper class for running commands as root.
+ *
+ * Commands are written to long-lived shells as soon as they are submitted, each framed by a
+ * unique marker on both stdout and stderr. Two reader threads per shell split the output back up
+ * by marker, so submitting a command never waits for the ones before it to finish. Each shell
+ * runs its commands one after another, so up to {@link #setMaxShells} shells are started as
+ * needed and kept open, and each command goes to the least busy one. Commands that share an
+ * affinity key always run in the order they were submitted.
+ *
+ * A command that runs for longer than {@link #setCommandTimeout} fails, and its shell is killed.
+ * Commands queued behind it fail too: they were already written to that shell, which may still
+ * run them, so running them again elsewhere could repeat commands that are not idempotent.
+ *
+ * Long-running commands that should not occupy a pooled shell can be given a shell of their own
+ * with {@link #startDedicatedShell}.
+ *
+ * Output can be streamed to a {@link LineConsumer} as it is read instead of being collected.
+ * Commands and their output are only logged when verbose logging is enabled for this class's
+ * tag, and then only the first few lines of each stream per command. Their timings are always
+ * recorded in {@link #getMetrics}.
  */
 
 @ApplicationScope
 public class RootShell {
+    private static final int DEFAULT_MAX_SHELLS = 4;
+    // A UUID marker, a space, and an exit value of up to three digits.
+    private static final int MAX_END_MARKER_LENGTH = 36 + 4;
+    // Long enough for wg to finish retrying endpoint name resolution.
+    private static final long DEFAULT_TIMEOUT_MS = 60000;
+    private static final int MAX_LOGGED_LINES = 20;
     private static final String SU = "su";
+    // Long enough for the user to answer su's consent prompt.
+    private static final long STARTUP_TIMEOUT_MS = 30000;
     private static final String TAG = "WireGuard/" + RootShell.class.getSimpleName();
 
     private final String deviceNotRootedMessage;
     private final File localBinaryDir;
     private final File localTemporaryDir;
+    private final Map<String, Affinity> affinities = new HashMap<>();
+    private final ExecutorService callbackExecutor;
     private final Object lock = new Object();
+    private final RootShellMetrics metrics = new RootShellMetrics();
     private final String preamble;
-    private Process process;
-    private BufferedReader stderr;
-    private OutputStreamWriter stdin;
-    private BufferedReader stdout;
+    private final List<Session> sessions = new ArrayList<>();
+    private final String shellCommand;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private boolean areDirectoriesCreated;
+    private boolean isSuAvailable;
+    private int maxShells = DEFAULT_MAX_SHELLS;
+    private int startingShells;
+    private long timeoutMs = DEFAULT_TIMEOUT_MS;
 
     @Inject
     public RootShell(@ApplicationContext final Context context) {
+        this(context, SU);
+    }
+
+    /**
+     * Creates a root shell pool that runs {@code shellCommand} instead of su, for tests.
+     */
+    RootShell(final Context context, final String shellCommand) {
+        this.shellCommand = shellCommand;
         deviceNotRootedMessage = context.getString(R.string.error_root);
         final File cacheDir = context.getCacheDir();
         localBinaryDir = new File(cacheDir, "bin");
         localTemporaryDir = new File(cacheDir, "tmp");
         preamble = String.format("export PATH=\"%s:$PATH\" TMPDIR='%s'; id -u\n",
                 localBinaryDir, localTemporaryDir);
+        watchdog = new ScheduledThreadPoolExecutor(1, daemonThreadFactory(" watchdog"));
+        watchdog.setRemoveOnCancelPolicy(true);
+        callbackExecutor = Executors.newCachedThreadPool(daemonThreadFactory(" callback"));
+    }
+
+    private static <T> T await(final CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for root shell");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static LineConsumer collectInto(final Collection<String> output) {
+        return output != null ? output::add : null;
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String suffix) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, TAG + suffix);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static String quote(final String value) {
+        return '\'' + value.replace("'", "'\\''") + '\'';
     }
 
     private static boolean isExecutableInPath(final String name) {
+        if (name.indexOf('/') >= 0)
+            return new File(name).canExecute();
         final String path = System.getenv("PATH");
         if (path == null)
             return false;
@@ -58,17 +157,91 @@ public class RootShell {
         return false;
     }
 
+    /**
+     * Returns the least busy running shell, or the one already running commands with the same
+     * affinity, or null if a new shell should be started because every running one is busy
+     * and the pool is not full. Must be called with the lock held.
+     */
+    private Session chooseSession(final String affinity) {
+        if (affinity != null && affinities.containsKey(affinity)) {
+            final Session session = affinities.get(affinity).session;
+            if (session.isAlive())
+                return session;
+        }
+        Session idlest = null;
+        for (final Session session : sessions) {
+            if (idlest == null || session.pending < idlest.pending)
+                idlest = session;
+        }
+        final boolean isPoolFull = sessions.size() + startingShells >= maxShells;
+        if (idlest != null && (idlest.pending == 0 || isPoolFull))
+            return idlest;
+        return null;
+    }
+
+    public RootShellMetrics getMetrics() {
+        return metrics;
+    }
+
     private boolean isRunning() {
         synchronized (lock) {
-            try {
-                // Throws an exception if the process hasn't finished yet.
-                if (process != null)
-                    process.exitValue();
-                return false;
-            } catch (final IllegalThreadStateException ignored) {
-                // The existing process is still running.
-                return true;
+            for (final Iterator<Session> i = sessions.iterator(); i.hasNext(); ) {
+                if (!i.next().isAlive())
+                    i.remove();
             }
+            return !sessions.isEmpty();
+        }
+    }
+
+    /**
+     * Waits for a shell that is starting to join the pool or fail. Must be called with the lock
+     * held.
+     */
+    private void awaitStartingShell() throws InterruptedIOException {
+        try {
+            lock.wait();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for root shell");
+        }
+    }
+
+    /**
+     * Fails a command that has run for too long, kills its shell, and fails the commands queued
+     * behind it. The hung command's children may keep the shell's pipes open, so the shell may
+     * still read and run those commands, and they cannot safely be moved to another shell.
+     */
+    private void onTimeout(final Session session, final Command command) {
+        // The command may have finished just as it timed out, in which case its shell is fine.
+        if (!command.future.completeExceptionally(
+                new InterruptedIOException("Root command timed out")))
+            return;
+        Log.w(TAG, "Command timed out after " + command.timeoutMs + " ms, restarting root shell");
+        // Kill the shell first, which fails any write blocked on it.
+        final Set<Command> queued = session.retire();
+        synchronized (lock) {
+            sessions.remove(session);
+        }
+        for (final Command next : queued)
+            next.future.completeExceptionally(new IOException("Root shell was restarted"));
+    }
+
+    private void recordMetrics(final Command command, final Integer exitValue) {
+        final long now = SystemClock.elapsedRealtimeNanos();
+        // A command that never started spent all of its time waiting.
+        final long startTime = command.started ? command.startTime : now;
+        metrics.recordCommand(command.command, startTime - command.submitTime, now - startTime,
+                command.stdoutSize, exitValue);
+    }
+
+    private void onFinished(final Session session, final String affinity) {
+        synchronized (lock) {
+            --session.pending;
+            if (affinity == null)
+                return;
+            final Affinity state = affinities.get(affinity);
+            if (state != null && state.session == session && --state.pending == 0)
+                affinities.remove(affinity);
         }
     }
 
@@ -82,109 +255,349 @@ public class RootShell {
      */
     public int run(final Collection<String> output, final String command)
             throws IOException, NoRootException {
+        return run(output, command, null);
+    }
+
+    /**
+     * Run a command in a root shell, with {@code input} piped to its standard input. The input
+     * is written by the shell's {@code print} builtin, so it never touches the disk, and it is
+     * not logged, so it may contain secrets.
+     *
+     * @param output  Lines read from stdout are appended to this list. Pass null if the
+     *                output from the shell is not important.
+     * @param command Command to run as root.
+     * @param input   Text for the command's standard input, or null for none.
+     * @return The exit value of the command.
+     */
+    public int run(final Collection<String> output, final String command, final String input)
+            throws IOException, NoRootException {
+        return await(submit(null, collectInto(output), command, input));
+    }
+
+    /**
+     * Like {@link #run(Collection, String, String)}, but ordered with respect to every other
+     * command submitted with the same {@code affinity}, such as the name of a tunnel.
+     */
+    public int run(final String affinity, final Collection<String> output, final String command,
+                   final String input) throws IOException, NoRootException {
+        return await(submit(affinity, collectInto(output), command, input));
+    }
+
+    public CompletionStage<Result> runAsync(final String command) {
+        return runAsync(command, null);
+    }
+
+    /**
+     * Start running a command in a root shell without waiting for it, or for the commands
+     * submitted before it, to finish. The returned stage is completed on a callback thread,
+     * never on one of the shells' reader threads, so dependent actions may block.
+     *
+     * @param command Command to run as root.
+     * @param input   Text for the command's standard input, or null for none.
+     * @return A stage completed with the command's exit value and output.
+     */
+    public CompletionStage<Result> runAsync(final String command, final String input) {
+        return runAsync(null, command, input);
+    }
+
+    /**
+     * Like {@link #runAsync(String, String)}, but ordered with respect to every other command
+     * submitted with the same {@code affinity}, such as the name of a tunnel.
+     */
+    public CompletionStage<Result> runAsync(final String affinity, final String command,
+                                            final String input) {
+        final List<String> output = new ArrayList<>();
+        try {
+            return submitAsync(affinity, output::add, command, input)
+                    .thenApply(exitValue -> new Result(exitValue, output));
+        } catch (final IOException | NoRootException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Run a command in a root shell, passing each line of its stdout to {@code consumer} as soon
+     * as it is read, so that large outputs never have to be held in memory.
+     *
+     * @param affinity Commands with the same affinity run in order, or null for no affinity.
+     * @param consumer Called on a shell reader thread for each line read from stdout. If it
+     *                 throws, no further lines are passed to it and the command fails.
+     * @param command  Command to run as root.
+     * @param input    Text for the command's standard input, or null for none.
+     * @return The exit value of the command.
+     */
+    public int runStreaming(final String affinity, final LineConsumer consumer,
+                            final String command, final String input)
+            throws IOException, NoRootException {
+        return await(submit(affinity, consumer, command, input));
+    }
+
+    /**
+     * Like {@link #runStreaming}, but without waiting for the command to finish.
+     *
+     * @return A stage completed on a callback thread with the command's exit value.
+     */
+    public CompletionStage<Integer> runStreamingAsync(final String affinity,
+                                                      final LineConsumer consumer,
+                                                      final String command, final String input) {
+        try {
+            return submitAsync(affinity, consumer, command, input);
+        } catch (final IOException | NoRootException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sets how long a command may run before it fails and its shell is killed, or zero to let
+     * commands run forever. Commands that have already been submitted keep their timeout.
+     */
+    public void setCommandTimeout(final long timeoutMs) {
+        if (timeoutMs < 0)
+            throw new IllegalArgumentException("Timeout must not be negative");
         synchronized (lock) {
-            /* Start inside synchronized block to prevent a concurrent call to stop(). */
-            start();
-            final String marker = UUID.randomUUID().toString();
-            final String script = "echo " + marker + "; echo " + marker + " >&2; (" + command +
-                    "); ret=$?; echo " + marker + " $ret; echo " + marker + " $ret >&2\n";
-            Log.v(TAG, "executing: " + command);
-            stdin.write(script);
-            stdin.flush();
-            String line;
-            int errnoStdout = Integer.MIN_VALUE;
-            int errnoStderr = Integer.MAX_VALUE;
-            int markersSeen = 0;
-            while ((line = stdout.readLine()) != null) {
-                if (line.startsWith(marker)) {
-                    ++markersSeen;
-                    if (line.length() > marker.length() + 1) {
-                        errnoStdout = Integer.valueOf(line.substring(marker.length() + 1));
-                        break;
-                    }
-                } else if (markersSeen > 0) {
-                    if (output != null)
-                        output.add(line);
-                    Log.v(TAG, "stdout: " + line);
-                }
-            }
-            while ((line = stderr.readLine()) != null) {
-                if (line.startsWith(marker)) {
-                    ++markersSeen;
-                    if (line.length() > marker.length() + 1) {
-                        errnoStderr = Integer.valueOf(line.substring(marker.length() + 1));
-                        break;
-                    }
-                } else if (markersSeen > 2) {
-                    Log.v(TAG, "stderr: " + line);
-                }
-            }
-            if (markersSeen != 4)
-                throw new IOException("Expected 4 markers, received " + markersSeen);
-            if (errnoStdout != errnoStderr)
-                throw new IOException("Unable to read exit status");
-            Log.v(TAG, "exit: " + errnoStdout);
-            return errnoStdout;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * Sets how many shells may run at once. Shells beyond the new limit are not stopped, but
+     * no more are started until the pool shrinks below it.
+     */
+    public void setMaxShells(final int maxShells) {
+        if (maxShells < 1)
+            throw new IllegalArgumentException("At least one shell is required");
+        synchronized (lock) {
+            this.maxShells = maxShells;
         }
     }
 
+    /**
+     * Makes sure at least one shell is running.
+     */
     public void start() throws IOException, NoRootException {
-        if (!isExecutableInPath(SU))
-            throw new NoRootException(deviceNotRootedMessage);
         synchronized (lock) {
-            if (isRunning())
+            if (isRunning() || startingShells > 0)
                 return;
-            if (!localBinaryDir.isDirectory() && !localBinaryDir.mkdirs())
-                throw new FileNotFoundException("Could not create local binary directory");
-            if (!localTemporaryDir.isDirectory() && !localTemporaryDir.mkdirs())
-                throw new FileNotFoundException("Could not create local temporary directory");
+            ++startingShells;
+        }
+        startSession();
+    }
+
+    /**
+     * Starts a root shell of its own for a long-running command, such as a monitor, so that it
+     * does not hold up a pooled shell. The shell is started and checked the same way as pooled
+     * ones, then {@code command} is written to it. Its output is left to the caller, who must
+     * destroy it when it is no longer needed.
+     */
+    public ShellProcess startDedicatedShell(final String command)
+            throws IOException, NoRootException {
+        final ShellProcess shell = startShell();
+        try {
+            shell.stdin.write(command + '\n');
+            shell.stdin.flush();
+        } catch (final IOException e) {
+            shell.destroy();
+            throw e;
+        }
+        return shell;
+    }
+
+    /**
+     * Starts a shell for the pool without holding the lock, since startup may wait for the user
+     * to answer su's prompt, and then adds it to the pool. The caller must have counted it in
+     * {@code startingShells}.
+     */
+    private void startSession() throws IOException, NoRootException {
+        Session session = null;
+        try {
+            session = new Session(startShell());
+        } finally {
+            synchronized (lock) {
+                --startingShells;
+                if (session != null)
+                    sessions.add(session);
+                // Wake the submitters waiting for this shell, even if it failed to start.
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts su, sets up its environment, and checks that it is really running as root.
+     */
+    private ShellProcess startShell() throws IOException, NoRootException {
+        final long startTime = SystemClock.elapsedRealtimeNanos();
+        synchronized (lock) {
+            // Only a successful search is remembered, in case su is installed later.
+            if (!isSuAvailable) {
+                if (!isExecutableInPath(shellCommand))
+                    throw new NoRootException(deviceNotRootedMessage);
+                isSuAvailable = true;
+            }
+            if (!areDirectoriesCreated) {
+                if (!localBinaryDir.isDirectory() && !localBinaryDir.mkdirs())
+                    throw new FileNotFoundException("Could not create local binary directory");
+                if (!localTemporaryDir.isDirectory() && !localTemporaryDir.mkdirs())
+                    throw new FileNotFoundException("Could not create local temporary directory");
+                areDirectoriesCreated = true;
+            }
+        }
+        final ProcessBuilder builder = new ProcessBuilder().command(shellCommand);
+        builder.environment().put("LC_ALL", "C");
+        final Process process;
+        try {
+            process = builder.start();
+        } catch (final IOException e) {
+            // A failure at this stage means the device isn't rooted.
+            throw new NoRootException(deviceNotRootedMessage, e);
+        }
+        final ShellProcess shell = new ShellProcess(process);
+        // Whichever of the startup and the timeout finishes first wins. Killing the shell ends
+        // the reads below.
+        final AtomicBoolean isDecided = new AtomicBoolean();
+        final ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            if (isDecided.compareAndSet(false, true))
+                process.destroy();
+        }, STARTUP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        try {
+            shell.stdin.write(preamble);
+            shell.stdin.flush();
+            // Check that the shell started successfully.
+            final String uid = shell.stdout.readLine();
+            if (!"0".equals(uid)) {
+                Log.w(TAG, "Root check did not return correct UID: " + uid);
+                throw new NoRootException(deviceNotRootedMessage);
+            }
             try {
-                final ProcessBuilder builder = new ProcessBuilder().command(SU);
-                builder.environment().put("LC_ALL", "C");
-                try {
-                    process = builder.start();
-                } catch (final IOException e) {
-                    // A failure at this stage means the device isn't rooted.
-                    throw new NoRootException(deviceNotRootedMessage, e);
-                }
-                stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
-                stdout = new BufferedReader(new InputStreamReader(process.getInputStream(),
-                        StandardCharsets.UTF_8));
-                stderr = new BufferedReader(new InputStreamReader(process.getErrorStream(),
-                        StandardCharsets.UTF_8));
-                stdin.write(preamble);
-                stdin.flush();
-                // Check that the shell started successfully.
-                final String uid = stdout.readLine();
-                if (!"0".equals(uid)) {
-                    Log.w(TAG, "Root check did not return correct UID: " + uid);
+                process.exitValue();
+            } catch (final IllegalThreadStateException ignored) {
+                // The shell is running, unless the timeout is killing it right now.
+                if (!isDecided.compareAndSet(false, true))
+                    throw new InterruptedIOException("Root shell startup timed out");
+                timeout.cancel(false);
+                final long startupTime = SystemClock.elapsedRealtimeNanos() - startTime;
+                metrics.recordShellStartup(startupTime, true);
+                Log.d(TAG, "Started root shell in " + startupTime / 1000000 + " ms");
+                return shell;
+            }
+            String line;
+            while ((line = shell.stderr.readLine()) != null) {
+                Log.w(TAG, "Root check returned an error: " + line);
+                if (line.contains("Permission denied"))
                     throw new NoRootException(deviceNotRootedMessage);
-                }
-                if (!isRunning()) {
-                    String line;
-                    while ((line = stderr.readLine()) != null) {
-                        Log.w(TAG, "Root check returned an error: " + line);
-                        if (line.contains("Permission denied"))
-                            throw new NoRootException(deviceNotRootedMessage);
-                    }
-                    throw new IOException("Shell failed to start: " + process.exitValue());
-                }
-            } catch (final IOException | NoRootException e) {
-                stop();
-                throw e;
             }
+            throw new IOException("Shell failed to start: " + process.exitValue());
+        } catch (final IOException | NoRootException e) {
+            process.destroy();
+            metrics.recordShellStartup(SystemClock.elapsedRealtimeNanos() - startTime, false);
+            timeout.cancel(false);
+            if (!isDecided.compareAndSet(false, true) && !(e instanceof InterruptedIOException))
+                throw new InterruptedIOException("Root shell startup timed out");
+            throw e;
         }
     }
 
     public void stop() {
+        final List<Session> stopped;
         synchronized (lock) {
-            if (process != null) {
-                process.destroy();
-                process = null;
+            stopped = new ArrayList<>(sessions);
+            sessions.clear();
+            affinities.clear();
+        }
+        for (final Session session : stopped) {
+            for (final Command command : session.retire())
+                command.future.completeExceptionally(new IOException("Root shell exited"));
+        }
+    }
+
+    private CompletableFuture<Integer> submit(final String affinity, final LineConsumer consumer,
+                                              final String command, final String input)
+            throws IOException, NoRootException {
+        final long timeout;
+        synchronized (lock) {
+            timeout = timeoutMs;
+        }
+        final Command pending = new Command(affinity, consumer, command, input, timeout,
+                Log.isLoggable(TAG, Log.VERBOSE));
+        pending.future.whenComplete((exitValue, e) -> recordMetrics(pending, exitValue));
+        submit(pending);
+        return pending.future;
+    }
+
+    /**
+     * Like {@link #submit(String, LineConsumer, String, String)}, but the returned stage is
+     * completed on a callback thread, so that callers' actions never run on, or block, the
+     * threads reading the shells' output.
+     */
+    private CompletableFuture<Integer> submitAsync(final String affinity,
+                                                   final LineConsumer consumer,
+                                                   final String command, final String input)
+            throws IOException, NoRootException {
+        return submit(affinity, consumer, command, input)
+                .whenCompleteAsync((exitValue, e) -> {
+                    // Only the change of thread is needed.
+                }, callbackExecutor);
+    }
+
+    /**
+     * Chooses a shell and accounts for the command under the pool's lock, then writes it to the
+     * shell outside of it, so that a write blocked on one shell does not hold up the others.
+     * New shells are also started outside of the lock.
+     */
+    private void submit(final Command command) throws IOException, NoRootException {
+        while (true) {
+            final Session session;
+            synchronized (lock) {
+                // A shell that timed out may not have been removed from the pool yet.
+                isRunning();
+                session = chooseSession(command.affinity);
+                if (session != null) {
+                    ++session.pending;
+                    if (command.affinity != null) {
+                        Affinity state = affinities.get(command.affinity);
+                        if (state == null || state.session != session) {
+                            state = new Affinity(session);
+                            affinities.put(command.affinity, state);
+                        }
+                        ++state.pending;
+                    }
+                } else if (sessions.size() + startingShells < maxShells) {
+                    ++startingShells;
+                } else {
+                    // Every free slot is taken by a shell that is still starting.
+                    awaitStartingShell();
+                    continue;
+                }
+            }
+            if (session == null) {
+                // Then choose again, since another command may have taken the new shell.
+                startSession();
+                continue;
+            }
+            final boolean isWritten;
+            try {
+                isWritten = session.submit(command);
+            } catch (final IOException e) {
+                onFinished(session, command.affinity);
+                throw e;
+            }
+            if (isWritten) {
+                command.future.whenComplete((exitValue, e) ->
+                        onFinished(session, command.affinity));
+                return;
             }
+            // The shell was retired after it was chosen, so try another.
+            onFinished(session, command.affinity);
         }
     }
 
+    /**
+     * Receives the lines a command writes to stdout, one at a time, as they are read.
+     */
+    public interface LineConsumer {
+        void accept(String line);
+    }
+
     public static class NoRootException extends Exception {
         public NoRootException(final String message, final Throwable cause) {
             super(message, cause);
@@ -194,4 +607,326 @@ public class RootShell {
             super(message);
         }
     }
+
+    /**
+     * The outcome of a command run with {@link #runAsync}.
+     */
+    public static final class Result {
+        private final int exitValue;
+        private final List<String> output;
+
+        private Result(final int exitValue, final List<String> output) {
+            this.exitValue = exitValue;
+            this.output = Collections.unmodifiableList(output);
+        }
+
+        public int getExitValue() {
+            return exitValue;
+        }
+
+        /**
+         * Returns the lines the command wrote to stdout.
+         */
+        public List<String> getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * A running root shell and its streams. Reading must go through the readers returned here,
+     * since they may already hold output that arrived with the root check.
+     */
+    public static final class ShellProcess {
+        private final Process process;
+        private final BufferedReader stderr;
+        private final OutputStreamWriter stdin;
+        private final BufferedReader stdout;
+
+        private ShellProcess(final Process process) {
+            this.process = process;
+            stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            stdout = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            stderr = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+        }
+
+        public void destroy() {
+            process.destroy();
+        }
+
+        public BufferedReader getStderr() {
+            return stderr;
+        }
+
+        public BufferedReader getStdout() {
+            return stdout;
+        }
+    }
+
+    /**
+     * The shell that commands with a given affinity are running in, and how many are left.
+     */
+    private static final class Affinity {
+        private final Session session;
+        private int pending;
+
+        private Affinity(final Session session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * A command that has been written to the shell, and what has been read back for it so far.
+     */
+    private static final class Command {
+        private final String affinity;
+        private final String command;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+        private final String input;
+        private final String marker = UUID.randomUUID().toString();
+        private final long submitTime = SystemClock.elapsedRealtimeNanos();
+        private final long timeoutMs;
+        private final boolean verbose;
+        private LineConsumer consumer;
+        private RuntimeException consumerException;
+        private int finishedStreams;
+        private int stderrExitValue;
+        private int stderrLines;
+        private int stdoutExitValue;
+        private int stdoutLines;
+        private long stdoutSize;
+        private long startTime;
+        private volatile boolean started;
+
+        private Command(final String affinity, final LineConsumer consumer, final String command,
+                        final String input, final long timeoutMs, final boolean verbose) {
+            this.affinity = affinity;
+            this.command = command;
+            this.consumer = consumer;
+            this.input = input;
+            this.timeoutMs = timeoutMs;
+            this.verbose = verbose;
+        }
+
+        /**
+         * Handles one line of output that was read between the command's markers. Each stream's
+         * fields are only touched by that stream's reader thread.
+         */
+        private void accept(final boolean isStdout, final String line) {
+            final int count = isStdout ? ++stdoutLines : ++stderrLines;
+            if (verbose && count <= MAX_LOGGED_LINES)
+                Log.v(TAG, (isStdout ? "stdout: " : "stderr: ") + line);
+            if (!isStdout)
+                return;
+            stdoutSize += line.length() + 1;
+            if (consumer == null)
+                return;
+            try {
+                consumer.accept(line);
+            } catch (final RuntimeException e) {
+                // Keep reading up to the end marker, so the shell stays usable.
+                consumer = null;
+                consumerException = e;
+            }
+        }
+
+        /**
+         * Records the exit value read from the end marker on one stream, and completes the
+         * command once both streams have reached their end markers.
+         */
+        private void finishStream(final boolean isStdout, final String line) {
+            final int exitValue;
+            try {
+                exitValue = Integer.parseInt(line.substring(marker.length() + 1));
+            } catch (final IndexOutOfBoundsException | NumberFormatException e) {
+                future.completeExceptionally(new IOException("Unable to read exit status", e));
+                return;
+            }
+            synchronized (this) {
+                if (isStdout)
+                    stdoutExitValue = exitValue;
+                else
+                    stderrExitValue = exitValue;
+                if (++finishedStreams < 2)
+                    return;
+            }
+            if (stdoutExitValue != stderrExitValue) {
+                future.completeExceptionally(new IOException("Unable to read exit status"));
+                return;
+            }
+            if (verbose) {
+                if (stdoutLines > MAX_LOGGED_LINES || stderrLines > MAX_LOGGED_LINES)
+                    Log.v(TAG, "omitted: " + Math.max(0, stdoutLines - MAX_LOGGED_LINES) +
+                            " stdout and " + Math.max(0, stderrLines - MAX_LOGGED_LINES) +
+                            " stderr lines");
+                Log.v(TAG, "exit: " + exitValue);
+            }
+            if (consumerException != null) {
+                future.completeExceptionally(
+                        new IOException("Unable to process command output", consumerException));
+                return;
+            }
+            future.complete(exitValue);
+        }
+    }
+
+    /**
+     * One running shell process, with its queue of commands awaiting output on each stream.
+     */
+    private final class Session {
+        private final Process process;
+        private final Queue<Command> stderrQueue = new ConcurrentLinkedQueue<>();
+        private final OutputStreamWriter stdin;
+        private final Queue<Command> stdoutQueue = new ConcurrentLinkedQueue<>();
+        // Keeps commands in the queues in the order they are written to stdin.
+        private final Object writeLock = new Object();
+        // Guarded by the lock of the owning RootShell.
+        private int pending;
+        private volatile boolean retired;
+
+        private Session(final ShellProcess shell) {
+            process = shell.process;
+            stdin = shell.stdin;
+            startReader(shell.stdout, stdoutQueue, true);
+            startReader(shell.stderr, stderrQueue, false);
+        }
+
+        private boolean isAlive() {
+            if (retired)
+                return false;
+            try {
+                // Throws an exception if the process hasn't finished yet.
+                process.exitValue();
+                return false;
+            } catch (final IllegalThreadStateException ignored) {
+                return true;
+            }
+        }
+
+        private void read(final BufferedReader reader, final Queue<Command> queue,
+                          final boolean isStdout) {
+            Command current = null;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (current == null) {
+                        // Between commands, only the start marker of the next one is expected.
+                        final Command next = queue.peek();
+                        if (next != null && line.equals(next.marker)) {
+                            current = next;
+                            if (isStdout)
+                                onStarted(current);
+                        } else {
+                            Log.w(TAG, "Unexpected output outside of a command: " + line);
+                        }
+                    } else {
+                        // Output without a trailing newline runs into the end marker.
+                        final int end = line.indexOf(current.marker,
+                                Math.max(0, line.length() - MAX_END_MARKER_LENGTH));
+                        if (end < 0) {
+                            current.accept(isStdout, line);
+                            continue;
+                        }
+                        if (end > 0)
+                            current.accept(isStdout, line.substring(0, end));
+                        queue.poll();
+                        current.finishStream(isStdout, line.substring(end));
+                        current = null;
+                    }
+                }
+            } catch (final IOException ignored) {
+                // Treated the same as the end of the stream.
+            }
+            // The shell has exited, so nothing still queued is going to finish. Retiring it first
+            // means nothing more can be queued.
+            synchronized (this) {
+                retired = true;
+            }
+            Command command;
+            while ((command = queue.poll()) != null)
+                command.future.completeExceptionally(new IOException("Root shell exited"));
+        }
+
+        /**
+         * Stops accepting commands and kills the shell, without waiting for its output to end.
+         * A hung command's children may keep the shell's pipes open after it has been killed.
+         *
+         * @return The commands that had been written to the shell but had not finished.
+         */
+        private Set<Command> retire() {
+            final Set<Command> queued = new LinkedHashSet<>();
+            synchronized (this) {
+                retired = true;
+                // A command may have finished on one stream but not the other.
+                Command command;
+                while ((command = stderrQueue.poll()) != null)
+                    queued.add(command);
+                while ((command = stdoutQueue.poll()) != null)
+                    queued.add(command);
+            }
+            process.destroy();
+            return queued;
+        }
+
+        private void startReader(final BufferedReader reader, final Queue<Command> queue,
+                                 final boolean isStdout) {
+            final Thread thread = new Thread(() -> read(reader, queue, isStdout),
+                    TAG + (isStdout ? " stdout" : " stderr"));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Starts timing a command once the shell has started running it, rather than when it
+         * was queued behind other commands.
+         */
+        private void onStarted(final Command command) {
+            command.startTime = SystemClock.elapsedRealtimeNanos();
+            // Publishes the start time to threads that check whether the command has started.
+            command.started = true;
+            if (command.timeoutMs == 0)
+                return;
+            final ScheduledFuture<?> timeout = watchdog.schedule(() -> onTimeout(this, command),
+                    command.timeoutMs, TimeUnit.MILLISECONDS);
+            command.future.whenComplete((exitValue, e) -> timeout.cancel(false));
+        }
+
+        /**
+         * Writes a command to the shell. Writes to one shell are serialized by its own lock, not
+         * by the pool's, and may block until the shell reads its input.
+         *
+         * @return False if the shell has been retired and the command was not written to it.
+         */
+        private boolean submit(final Command command) throws IOException {
+            final String marker = command.marker;
+            // Without input, stdin is the shell's own, where the next commands are queued.
+            final String pipe = command.input != null
+                    ? "print -rn -- " + quote(command.input) + " | " : "";
+            final String redirect = command.input != null ? "" : " </dev/null";
+            final String script = "echo " + marker + "; echo " + marker + " >&2; " + pipe + '(' +
+                    command.command + ')' + redirect + "; ret=$?; echo " + marker + " $ret; echo " +
+                    marker + " $ret >&2\n";
+            synchronized (writeLock) {
+                // Queue the command before writing it, so its output cannot arrive first.
+                synchronized (this) {
+                    if (retired)
+                        return false;
+                    stdoutQueue.add(command);
+                    stderrQueue.add(command);
+                }
+                if (command.verbose)
+                    Log.v(TAG, "executing: " + command.command);
+                try {
+                    stdin.write(script);
+                    stdin.flush();
+                } catch (final IOException e) {
+                    // The shell is gone. Killing it makes the readers fail everything queued.
+                    process.destroy();
+                    throw e;
+                }
+                return true;
+            }
+        }
+    }
 }
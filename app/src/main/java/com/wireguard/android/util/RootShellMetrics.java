@@ -0,0 +1,193 @@
+package com.wireguard.android.util;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings of the commands run by {@link RootShell}, grouped into classes by the first word of
+ * the command and its subcommand, such as {@code wg-quick up} or {@code wg show}. Each class
+ * records how long commands waited for a shell, how long they ran, how much they wrote to
+ * stdout, and how they exited. The time taken to start each shell is recorded as
+ * {@code (su startup)}. Recording never blocks, so it is done on the shells' own threads.
+ */
+
+public final class RootShellMetrics {
+    private static final int EXIT_VALUES = 256;
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final String SHELL_STARTUP = "(su startup)";
+
+    private final ConcurrentMap<String, CommandClass> classes = new ConcurrentHashMap<>();
+
+    RootShellMetrics() {
+    }
+
+    private static boolean isWordEnd(final char c) {
+        return Character.isWhitespace(c) || ";|&()".indexOf(c) >= 0;
+    }
+
+    /**
+     * @return The first word of the command, followed by the second if it is a subcommand made
+     * only of lowercase letters. Arguments such as tunnel names never become part of the class.
+     */
+    static String classify(final String command) {
+        final int length = command.length();
+        int start = 0;
+        while (start < length && Character.isWhitespace(command.charAt(start)))
+            ++start;
+        int end = start;
+        while (end < length && !isWordEnd(command.charAt(end)))
+            ++end;
+        int next = end;
+        while (next < length && command.charAt(next) == ' ')
+            ++next;
+        int nextEnd = next;
+        while (nextEnd < length && Character.isLowerCase(command.charAt(nextEnd)))
+            ++nextEnd;
+        final boolean isSubcommand = nextEnd == length || isWordEnd(command.charAt(nextEnd));
+        if (next > end && nextEnd > next && isSubcommand)
+            end = nextEnd;
+        return end > start ? command.substring(start, end) : "(empty)";
+    }
+
+    private static void appendHistogram(final StringBuilder report, final String name,
+                                        final Histogram histogram, final double scale,
+                                        final String unit) {
+        report.append("    ").append(name).append(':');
+        for (final double percentile : PERCENTILES) {
+            report.append(String.format(Locale.US, " p%.0f=%.1f", percentile,
+                    histogram.getValueAtPercentile(percentile) / scale));
+        }
+        report.append(String.format(Locale.US, " max=%.1f mean=%.1f %s\n",
+                histogram.getMax() / scale, histogram.getMean() / scale, unit));
+    }
+
+    private static void appendHistogramJson(final StringBuilder json, final String name,
+                                            final Histogram histogram) {
+        json.append(JSONObject.quote(name)).append(":{");
+        for (final double percentile : PERCENTILES) {
+            json.append(String.format(Locale.US, "\"p%.0f\":%d,", percentile,
+                    histogram.getValueAtPercentile(percentile)));
+        }
+        json.append("\"max\":").append(histogram.getMax())
+                .append(",\"mean\":").append(histogram.getMean()).append('}');
+    }
+
+    private CommandClass get(final String name) {
+        final CommandClass commandClass = classes.get(name);
+        if (commandClass != null)
+            return commandClass;
+        final CommandClass created = new CommandClass();
+        final CommandClass existing = classes.putIfAbsent(name, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * @return The number of commands recorded, not including shell startups.
+     */
+    public long getCommandCount() {
+        long count = 0;
+        for (final Map.Entry<String, CommandClass> entry : classes.entrySet()) {
+            if (!SHELL_STARTUP.equals(entry.getKey()))
+                count += entry.getValue().execution.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return A JSON object with one member per class. Times are in microseconds and output
+     * sizes are in characters.
+     */
+    public String getJson() {
+        final StringBuilder json = new StringBuilder("{");
+        for (final Map.Entry<String, CommandClass> entry : new TreeMap<>(classes).entrySet()) {
+            final CommandClass commandClass = entry.getValue();
+            if (json.length() > 1)
+                json.append(',');
+            json.append(JSONObject.quote(entry.getKey())).append(":{\"count\":")
+                    .append(commandClass.execution.getCount())
+                    .append(",\"failures\":").append(commandClass.failures.get())
+                    .append(",\"exitValues\":{");
+            boolean first = true;
+            for (int i = 0; i < EXIT_VALUES; ++i) {
+                final long count = commandClass.exitValues.get(i);
+                if (count == 0)
+                    continue;
+                if (!first)
+                    json.append(',');
+                json.append('"').append(i).append("\":").append(count);
+                first = false;
+            }
+            json.append("},");
+            appendHistogramJson(json, "queueWait", commandClass.queueWait);
+            json.append(',');
+            appendHistogramJson(json, "execution", commandClass.execution);
+            json.append(',');
+            appendHistogramJson(json, "outputSize", commandClass.outputSize);
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return A human-readable summary of each class, with times in milliseconds.
+     */
+    public String getReport() {
+        final StringBuilder report = new StringBuilder();
+        for (final Map.Entry<String, CommandClass> entry : new TreeMap<>(classes).entrySet()) {
+            final CommandClass commandClass = entry.getValue();
+            report.append(entry.getKey()).append(": ")
+                    .append(commandClass.execution.getCount()).append(" run, ")
+                    .append(commandClass.failures.get()).append(" failed");
+            for (int i = 0; i < EXIT_VALUES; ++i) {
+                final long count = commandClass.exitValues.get(i);
+                if (count != 0)
+                    report.append(", exit ").append(i).append(": ").append(count);
+            }
+            report.append('\n');
+            if (!SHELL_STARTUP.equals(entry.getKey()))
+                appendHistogram(report, "queue wait", commandClass.queueWait, 1000, "ms");
+            appendHistogram(report, "execution", commandClass.execution, 1000, "ms");
+            if (!SHELL_STARTUP.equals(entry.getKey()))
+                appendHistogram(report, "output", commandClass.outputSize, 1, "chars");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Records a command that finished, or failed if {@code exitValue} is null.
+     */
+    void recordCommand(final String command, final long queueWaitNanos,
+                       final long executionNanos, final long outputSize,
+                       final Integer exitValue) {
+        final CommandClass commandClass = get(classify(command));
+        commandClass.queueWait.record(queueWaitNanos / 1000);
+        commandClass.execution.record(executionNanos / 1000);
+        commandClass.outputSize.record(outputSize);
+        if (exitValue == null)
+            commandClass.failures.incrementAndGet();
+        else
+            commandClass.exitValues.incrementAndGet(exitValue & (EXIT_VALUES - 1));
+    }
+
+    void recordShellStartup(final long startupNanos, final boolean succeeded) {
+        final CommandClass commandClass = get(SHELL_STARTUP);
+        commandClass.execution.record(startupNanos / 1000);
+        if (!succeeded)
+            commandClass.failures.incrementAndGet();
+    }
+
+    private static final class CommandClass {
+        private final Histogram execution = new Histogram();
+        private final AtomicLongArray exitValues = new AtomicLongArray(EXIT_VALUES);
+        private final AtomicLong failures = new AtomicLong();
+        private final Histogram outputSize = new Histogram();
+        private final Histogram queueWait = new Histogram();
+    }
+}
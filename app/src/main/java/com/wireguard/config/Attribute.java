@@ -1,10 +1,5 @@
 package com.wireguard.config;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * The set of valid attributes for an interface or peer in a WireGuard configuration file.
  */
@@ -21,26 +16,37 @@ enum Attribute {
     PRIVATE_KEY("PrivateKey"),
     PUBLIC_KEY("PublicKey");
 
-    private static final Map<String, Attribute> KEY_MAP;
-    private static final Pattern SEPARATOR_PATTERN = Pattern.compile("\\s|=");
+    private static final Attribute[] VALUES = values();
 
-    static {
-        KEY_MAP = new HashMap<>(Attribute.values().length);
-        for (final Attribute key : Attribute.values()) {
-            KEY_MAP.put(key.token, key);
-        }
-    }
-
-    private final Pattern pattern;
     private final String token;
 
     Attribute(final String token) {
-        pattern = Pattern.compile(token + "\\s*=\\s*(\\S.*)");
         this.token = token;
     }
 
-    public static Attribute match(final CharSequence line) {
-        return KEY_MAP.get(SEPARATOR_PATTERN.split(line)[0]);
+    /**
+     * Finds the attribute whose token exactly occupies {@code buffer[start, end)}.
+     *
+     * @return The matching attribute, or null if there is none.
+     */
+    static Attribute match(final char[] buffer, final int start, final int end) {
+        for (final Attribute key : VALUES) {
+            if (regionMatches(key.token, buffer, start, end))
+                return key;
+        }
+        return null;
+    }
+
+    static boolean regionMatches(final String token, final char[] buffer,
+                                 final int start, final int end) {
+        final int length = token.length();
+        if (end - start != length)
+            return false;
+        for (int i = 0; i < length; ++i) {
+            if (token.charAt(i) != buffer[start + i])
+                return false;
+        }
+        return true;
     }
 
     public String composeWith(final Object value) {
@@ -50,9 +56,4 @@ enum Attribute {
     public String getToken() {
         return token;
     }
-
-    public String parse(final CharSequence line) {
-        final Matcher matcher = pattern.matcher(line);
-        return matcher.matches() ? matcher.group(1) : null;
-    }
 }
@@ -6,14 +6,12 @@ import android.databinding.ObservableList;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Represents a wg-quick configuration file, its name, and its connection state.
+ * Editable, observable view of a wg-quick configuration, for binding to the tunnel editor and
+ * detail views. Everything else works with the immutable {@link ConfigSpec}.
  */
 
 public class Config extends BaseObservable implements Parcelable {
@@ -36,44 +34,17 @@ public class Config extends BaseObservable implements Parcelable {
         interfaceSection = new Interface();
     }
 
+    public Config(final ConfigSpec spec) {
+        interfaceSection = new Interface(spec.getInterface());
+        for (final PeerSpec peer : spec.getPeers())
+            peers.add(new Peer(peer));
+    }
+
     private Config(final Parcel in) {
         interfaceSection = in.readParcelable(Interface.class.getClassLoader());
         in.readTypedList(peers, Peer.CREATOR);
     }
 
-    public static Config from(final InputStream stream)
-            throws IOException {
-        final Config config = new Config();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            Peer currentPeer = null;
-            String line;
-            boolean inInterfaceSection = false;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty() || line.startsWith("#"))
-                    continue;
-                if ("[Interface]".equals(line)) {
-                    currentPeer = null;
-                    inInterfaceSection = true;
-                } else if ("[Peer]".equals(line)) {
-                    currentPeer = new Peer();
-                    config.peers.add(currentPeer);
-                    inInterfaceSection = false;
-                } else if (inInterfaceSection) {
-                    config.interfaceSection.parse(line);
-                } else if (currentPeer != null) {
-                    currentPeer.parse(line);
-                } else {
-                    throw new IllegalArgumentException("Invalid configuration line: " + line);
-                }
-            }
-            if (!inInterfaceSection && currentPeer == null) {
-                throw new IllegalArgumentException("Could not find any config information");
-            }
-        }
-        return config;
-    }
-
     @Override
     public int describeContents() {
         return 0;
@@ -87,12 +58,19 @@ public class Config extends BaseObservable implements Parcelable {
         return peers;
     }
 
+    /**
+     * Captures the current contents of this editor object as an immutable configuration.
+     */
+    public ConfigSpec toSpec() {
+        final List<PeerSpec> peerSpecs = new ArrayList<>(peers.size());
+        for (final Peer peer : peers)
+            peerSpecs.add(peer.toSpec());
+        return new ConfigSpec(interfaceSection.toSpec(), peerSpecs);
+    }
+
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder().append(interfaceSection);
-        for (final Peer peer : peers)
-            sb.append('\n').append(peer);
-        return sb.toString();
+        return toSpec().toString();
     }
 
     @Override
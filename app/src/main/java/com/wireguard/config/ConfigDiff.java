@@ -0,0 +1,170 @@
+package com.wireguard.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The difference between two configurations of the same tunnel, expressed as the set of changes a
+ * backend must make to a running interface to move from the old configuration to the new one.
+ * Peers are matched by public key.
+ */
+
+public final class ConfigDiff {
+    private final List<PeerSpec> addedPeers = new ArrayList<>();
+    private final List<PeerSpec> modifiedPeers = new ArrayList<>();
+    private final InterfaceSpec newInterface;
+    private final InterfaceSpec oldInterface;
+    private final List<PeerSpec> removedPeers = new ArrayList<>();
+    private boolean arePeersMatchable = true;
+    private boolean isAllowedIPsChanged;
+
+    private ConfigDiff(final ConfigSpec oldConfig, final ConfigSpec newConfig) {
+        oldInterface = oldConfig.getInterface();
+        newInterface = newConfig.getInterface();
+        final Map<String, PeerSpec> oldPeers = indexPeers(oldConfig.getPeers());
+        final Map<String, PeerSpec> newPeers = indexPeers(newConfig.getPeers());
+        if (oldPeers == null || newPeers == null) {
+            arePeersMatchable = false;
+            isAllowedIPsChanged = true;
+            return;
+        }
+        for (final PeerSpec oldPeer : oldConfig.getPeers()) {
+            final PeerSpec newPeer = newPeers.get(oldPeer.getPublicKey());
+            if (newPeer == null) {
+                removedPeers.add(oldPeer);
+                isAllowedIPsChanged |= oldPeer.getAllowedIPs() != null;
+            } else if (!isSamePeer(oldPeer, newPeer)) {
+                isAllowedIPsChanged |=
+                        !Objects.equals(oldPeer.getAllowedIPs(), newPeer.getAllowedIPs());
+                // Neither wg(8) nor the UAPI can unset an endpoint, so re-create the peer instead.
+                if (oldPeer.getEndpoint() != null && newPeer.getEndpoint() == null) {
+                    removedPeers.add(oldPeer);
+                    addedPeers.add(newPeer);
+                } else {
+                    modifiedPeers.add(newPeer);
+                }
+            }
+        }
+        for (final PeerSpec newPeer : newConfig.getPeers()) {
+            if (!oldPeers.containsKey(newPeer.getPublicKey())) {
+                addedPeers.add(newPeer);
+                isAllowedIPsChanged |= newPeer.getAllowedIPs() != null;
+            }
+        }
+    }
+
+    /**
+     * Computes the changes needed to turn {@code oldConfig} into {@code newConfig}.
+     */
+    public static ConfigDiff between(final ConfigSpec oldConfig, final ConfigSpec newConfig) {
+        return new ConfigDiff(oldConfig, newConfig);
+    }
+
+    /**
+     * Returns the keepalive interval of a peer, treating an interval of 0 as unset, since both
+     * disable keepalives and the device reports them the same way.
+     */
+    private static String getKeepalive(final PeerSpec peer) {
+        final String keepalive = peer.getPersistentKeepalive();
+        return "0".equals(keepalive) ? null : keepalive;
+    }
+
+    /**
+     * Compares peers by their effect on the device, rather than by their exact spelling.
+     */
+    private static boolean isSamePeer(final PeerSpec oldPeer, final PeerSpec newPeer) {
+        if (oldPeer.equals(newPeer))
+            return true;
+        return Objects.equals(oldPeer.getAllowedIPs(), newPeer.getAllowedIPs())
+                && Objects.equals(oldPeer.getEndpoint(), newPeer.getEndpoint())
+                && Objects.equals(getKeepalive(oldPeer), getKeepalive(newPeer))
+                && Objects.equals(oldPeer.getPreSharedKey(), newPeer.getPreSharedKey())
+                && Objects.equals(oldPeer.getPublicKey(), newPeer.getPublicKey());
+    }
+
+    /**
+     * Indexes peers by public key, or returns null if any peer lacks a key or shares one.
+     */
+    private static Map<String, PeerSpec> indexPeers(final List<PeerSpec> peers) {
+        final Map<String, PeerSpec> index = new HashMap<>(peers.size() * 2);
+        for (final PeerSpec peer : peers) {
+            if (peer.getPublicKey() == null || index.put(peer.getPublicKey(), peer) != null)
+                return null;
+        }
+        return index;
+    }
+
+    /**
+     * Returns false if peers could not be matched by public key, in which case the peer lists
+     * are empty and the peers can only be replaced wholesale.
+     */
+    public boolean arePeersMatchable() {
+        return arePeersMatchable;
+    }
+
+    public List<PeerSpec> getAddedPeers() {
+        return Collections.unmodifiableList(addedPeers);
+    }
+
+    /**
+     * Returns the new versions of peers that exist in both configurations but differ.
+     */
+    public List<PeerSpec> getModifiedPeers() {
+        return Collections.unmodifiableList(modifiedPeers);
+    }
+
+    public InterfaceSpec getNewInterface() {
+        return newInterface;
+    }
+
+    public List<PeerSpec> getRemovedPeers() {
+        return Collections.unmodifiableList(removedPeers);
+    }
+
+    /**
+     * Returns true if the set of routes implied by the peers' allowed IPs may have changed.
+     */
+    public boolean isAllowedIPsChanged() {
+        return isAllowedIPsChanged;
+    }
+
+    public boolean isEmpty() {
+        return arePeersMatchable && !isInterfaceChanged() && addedPeers.isEmpty()
+                && modifiedPeers.isEmpty() && removedPeers.isEmpty();
+    }
+
+    public boolean isInterfaceChanged() {
+        return !oldInterface.equals(newInterface);
+    }
+
+    /**
+     * Returns true if settings outside of WireGuard itself changed: the interface's addresses,
+     * DNS servers, or MTU.
+     */
+    public boolean isNetworkChanged() {
+        return !Objects.equals(oldInterface.getAddress(), newInterface.getAddress())
+                || !Objects.equals(oldInterface.getDns(), newInterface.getDns())
+                || !Objects.equals(oldInterface.getMtu(), newInterface.getMtu());
+    }
+
+    public boolean isListenPortChanged() {
+        return !Objects.equals(oldInterface.getListenPort(), newInterface.getListenPort());
+    }
+
+    public boolean isPrivateKeyChanged() {
+        return !Objects.equals(oldInterface.getPrivateKey(), newInterface.getPrivateKey());
+    }
+
+    /**
+     * Returns true if applying this difference requires taking the interface down and back up,
+     * i.e. because its addresses, DNS servers, or MTU changed, or because peers could not be
+     * matched by public key.
+     */
+    public boolean requiresRestart() {
+        return !arePeersMatchable || isNetworkChanged();
+    }
+}
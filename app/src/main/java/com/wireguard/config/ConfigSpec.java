@@ -0,0 +1,110 @@
+package com.wireguard.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable representation of a wg-quick configuration file. This is the form used for parsing,
+ * storage, and the backends; {@link Config} wraps it with observable state for the editor.
+ */
+
+public final class ConfigSpec {
+    private final long fingerprint;
+    private final InterfaceSpec interfaceSection;
+    private final List<PeerSpec> peers;
+
+    public ConfigSpec(final InterfaceSpec interfaceSection, final List<PeerSpec> peers) {
+        this.interfaceSection = interfaceSection;
+        this.peers = Collections.unmodifiableList(new ArrayList<>(peers));
+        long hash = Fingerprint.mix(Fingerprint.INITIAL, interfaceSection.getFingerprint());
+        for (final PeerSpec peer : peers)
+            hash = Fingerprint.mix(hash, peer.getFingerprint());
+        fingerprint = hash;
+    }
+
+    public static ConfigSpec from(final InputStream stream)
+            throws IOException {
+        final InterfaceSpec.Builder interfaceBuilder = new InterfaceSpec.Builder();
+        final List<PeerSpec.Builder> peerBuilders = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            final ConfigTokenizer tokenizer = new ConfigTokenizer(reader);
+            PeerSpec.Builder currentPeer = null;
+            boolean inInterfaceSection = false;
+            ConfigTokenizer.Token token;
+            while ((token = tokenizer.next()) != ConfigTokenizer.Token.END) {
+                if (token == ConfigTokenizer.Token.SECTION) {
+                    if (tokenizer.getSection() == ConfigTokenizer.Section.INTERFACE) {
+                        currentPeer = null;
+                        inInterfaceSection = true;
+                    } else {
+                        currentPeer = new PeerSpec.Builder();
+                        peerBuilders.add(currentPeer);
+                        inInterfaceSection = false;
+                    }
+                } else if (inInterfaceSection) {
+                    if (!interfaceBuilder.parse(tokenizer.getAttribute(), tokenizer.getValue()))
+                        throw tokenizer.invalidLine("Invalid interface attribute");
+                } else if (currentPeer != null) {
+                    if (!currentPeer.parse(tokenizer.getAttribute(), tokenizer.getValue()))
+                        throw tokenizer.invalidLine("Invalid peer attribute");
+                } else {
+                    throw tokenizer.invalidLine("Invalid configuration line");
+                }
+            }
+            if (!inInterfaceSection && currentPeer == null) {
+                throw new IllegalArgumentException("Could not find any config information");
+            }
+        }
+        final List<PeerSpec> peers = new ArrayList<>(peerBuilders.size());
+        for (final PeerSpec.Builder builder : peerBuilders)
+            peers.add(builder.build());
+        return new ConfigSpec(interfaceBuilder.build(), peers);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof ConfigSpec))
+            return false;
+        final ConfigSpec other = (ConfigSpec) obj;
+        return fingerprint == other.fingerprint
+                && interfaceSection.equals(other.interfaceSection)
+                && peers.equals(other.peers);
+    }
+
+    /**
+     * Returns a 64-bit hash of the contents of this configuration, computed once at construction.
+     * Configurations with different fingerprints are never equal.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public InterfaceSpec getInterface() {
+        return interfaceSection;
+    }
+
+    public List<PeerSpec> getPeers() {
+        return peers;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder().append(interfaceSection);
+        for (final PeerSpec peer : peers)
+            sb.append('\n').append(peer);
+        return sb.toString();
+    }
+}
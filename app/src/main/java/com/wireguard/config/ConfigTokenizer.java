@@ -0,0 +1,176 @@
+package com.wireguard.config;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Single-pass lexer for wg-quick configuration files. Lines are located, stripped of trailing
+ * whitespace, and split into section headers or key/value pairs by scanning indices in a
+ * reusable character buffer, so the only allocation per attribute is the value string itself.
+ */
+
+final class ConfigTokenizer {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private Attribute attribute;
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+    private boolean isEof;
+    private int limit;
+    private int lineEnd;
+    private int lineNumber;
+    private int lineStart;
+    private int position;
+    private Section section;
+    private String value;
+
+    ConfigTokenizer(final Reader reader) {
+        this.reader = reader;
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * Returns the attribute of the most recent {@code ATTRIBUTE} token.
+     */
+    Attribute getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Returns the 1-based number of the line containing the most recent token.
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the section named by the most recent {@code SECTION} token.
+     */
+    Section getSection() {
+        return section;
+    }
+
+    /**
+     * Returns the trimmed value of the most recent {@code ATTRIBUTE} token, or null if the value
+     * is empty.
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Builds an exception describing a problem with the line containing the most recent token.
+     */
+    IllegalArgumentException invalidLine(final String reason) {
+        return new IllegalArgumentException(reason + " on line " + lineNumber + ": " +
+                new String(buffer, lineStart, lineEnd - lineStart).trim());
+    }
+
+    /**
+     * Advances to the next meaningful line, skipping blank lines and comments.
+     *
+     * @return The kind of token found, or {@code END} at the end of the input.
+     */
+    Token next() throws IOException {
+        while (readLine()) {
+            // Section headers, keys, and comments must start at the beginning of the line.
+            final int start = lineStart;
+            int end = lineEnd;
+            while (end > start && isWhitespace(buffer[end - 1]))
+                --end;
+            if (start == end || buffer[start] == '#')
+                continue;
+            if (buffer[start] == '[') {
+                if (buffer[end - 1] != ']')
+                    throw invalidLine("Unterminated section header");
+                section = Section.match(buffer, start + 1, end - 1);
+                if (section == null)
+                    throw invalidLine("Unknown section");
+                return Token.SECTION;
+            }
+            int separator = start;
+            while (separator < end && buffer[separator] != '=')
+                ++separator;
+            if (separator == end)
+                throw invalidLine("Missing '='");
+            int keyEnd = separator;
+            while (keyEnd > start && isWhitespace(buffer[keyEnd - 1]))
+                --keyEnd;
+            attribute = Attribute.match(buffer, start, keyEnd);
+            if (attribute == null)
+                throw invalidLine("Unknown attribute");
+            int valueStart = separator + 1;
+            while (valueStart < end && isWhitespace(buffer[valueStart]))
+                ++valueStart;
+            value = valueStart < end ? new String(buffer, valueStart, end - valueStart) : null;
+            return Token.ATTRIBUTE;
+        }
+        return Token.END;
+    }
+
+    /**
+     * Locates the next line in the buffer, refilling (and if necessary growing) it from the
+     * reader. On return, the line occupies [lineStart, lineEnd) without its terminator.
+     */
+    private boolean readLine() throws IOException {
+        int scan = position;
+        for (;;) {
+            while (scan < limit && buffer[scan] != '\n')
+                ++scan;
+            if (scan < limit || isEof)
+                break;
+            // The line continues past the buffered data. Compact, grow if full, and refill.
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                scan -= position;
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                final char[] larger = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, limit);
+                buffer = larger;
+            }
+            final int count = reader.read(buffer, limit, buffer.length - limit);
+            if (count < 0)
+                isEof = true;
+            else
+                limit += count;
+        }
+        if (position == limit && isEof)
+            return false;
+        lineStart = position;
+        lineEnd = scan;
+        position = scan < limit ? scan + 1 : scan;
+        ++lineNumber;
+        return true;
+    }
+
+    enum Section {
+        INTERFACE("Interface"),
+        PEER("Peer");
+
+        private final String token;
+
+        Section(final String token) {
+            this.token = token;
+        }
+
+        static Section match(final char[] buffer, final int start, final int end) {
+            for (final Section section : values()) {
+                if (Attribute.regionMatches(section.token, buffer, start, end))
+                    return section;
+            }
+            return null;
+        }
+    }
+
+    enum Token {
+        ATTRIBUTE,
+        END,
+        SECTION,
+    }
+}
@@ -0,0 +1,36 @@
+package com.wireguard.config;
+
+/**
+ * Helpers for computing 64-bit FNV-1a content fingerprints of configuration objects. Fingerprints
+ * are used to reject unequal configurations quickly and to detect no-op changes.
+ */
+
+final class Fingerprint {
+    static final long INITIAL = 0xcbf29ce484222325L;
+    private static final long NULL_MARKER = 0xffff;
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fingerprint() {
+        // Prevent instantiation.
+    }
+
+    static long mix(long hash, final long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    static long mix(long hash, final String value) {
+        if (value == null)
+            return (hash ^ NULL_MARKER) * PRIME;
+        final int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            hash ^= value.charAt(i);
+            hash *= PRIME;
+        }
+        // Terminate each field so that adjacent fields cannot run together.
+        return mix(hash, length);
+    }
+}
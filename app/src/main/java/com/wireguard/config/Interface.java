@@ -6,11 +6,14 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.wireguard.android.BR;
-import com.wireguard.crypto.KeyEncoding;
+import com.wireguard.crypto.Key;
 import com.wireguard.crypto.Keypair;
 
+import java.util.Objects;
+
 /**
- * Represents the configuration for a WireGuard interface (an [Interface] block).
+ * Editable, observable view of a WireGuard interface (an [Interface] block). See
+ * {@link InterfaceSpec} for the immutable form.
  */
 
 public class Interface extends BaseObservable implements Parcelable {
@@ -28,15 +31,24 @@ public class Interface extends BaseObservable implements Parcelable {
 
     private String address;
     private String dns;
-    private Keypair keypair;
     private String listenPort;
     private String mtu;
     private String privateKey;
+    private String publicKey;
 
     public Interface() {
         // Do nothing.
     }
 
+    public Interface(final InterfaceSpec spec) {
+        address = spec.getAddress();
+        dns = spec.getDns();
+        listenPort = spec.getListenPort();
+        mtu = spec.getMtu();
+        privateKey = spec.getPrivateKey();
+        publicKey = spec.getPublicKey();
+    }
+
     private Interface(final Parcel in) {
         address = in.readString();
         dns = in.readString();
@@ -51,8 +63,9 @@ public class Interface extends BaseObservable implements Parcelable {
     }
 
     public void generateKeypair() {
-        keypair = new Keypair();
+        final Keypair keypair = new Keypair();
         privateKey = keypair.getPrivateKey();
+        publicKey = keypair.getPublicKey();
         notifyPropertyChanged(BR.privateKey);
         notifyPropertyChanged(BR.publicKey);
     }
@@ -84,23 +97,7 @@ public class Interface extends BaseObservable implements Parcelable {
 
     @Bindable
     public String getPublicKey() {
-        return keypair != null ? keypair.getPublicKey() : null;
-    }
-
-    public void parse(final String line) {
-        final Attribute key = Attribute.match(line);
-        if (key == Attribute.ADDRESS)
-            setAddress(key.parse(line));
-        else if (key == Attribute.DNS)
-            setDns(key.parse(line));
-        else if (key == Attribute.LISTEN_PORT)
-            setListenPort(key.parse(line));
-        else if (key == Attribute.MTU)
-            setMtu(key.parse(line));
-        else if (key == Attribute.PRIVATE_KEY)
-            setPrivateKey(key.parse(line));
-        else
-            throw new IllegalArgumentException(line);
+        return publicKey;
     }
 
     public void setAddress(String address) {
@@ -134,34 +131,29 @@ public class Interface extends BaseObservable implements Parcelable {
     public void setPrivateKey(String privateKey) {
         if (privateKey != null && privateKey.isEmpty())
             privateKey = null;
+        // Rebinding the same text must not cost another curve evaluation.
+        if (Objects.equals(privateKey, this.privateKey))
+            return;
         this.privateKey = privateKey;
-        if (privateKey != null && privateKey.length() == KeyEncoding.KEY_LENGTH_BASE64) {
-            try {
-                keypair = new Keypair(privateKey);
-            } catch (final IllegalArgumentException ignored) {
-                keypair = null;
-            }
-        } else {
-            keypair = null;
-        }
+        final Key key = Key.parse(privateKey);
+        publicKey = key != null ? new Keypair(key).getPublicKey() : null;
         notifyPropertyChanged(BR.privateKey);
         notifyPropertyChanged(BR.publicKey);
     }
 
+    public InterfaceSpec toSpec() {
+        return new InterfaceSpec.Builder()
+                .setAddress(address)
+                .setDns(dns)
+                .setListenPort(listenPort)
+                .setMtu(mtu)
+                .setPrivateKey(privateKey)
+                .build();
+    }
+
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder().append("[Interface]\n");
-        if (address != null)
-            sb.append(Attribute.ADDRESS.composeWith(address));
-        if (dns != null)
-            sb.append(Attribute.DNS.composeWith(dns));
-        if (listenPort != null)
-            sb.append(Attribute.LISTEN_PORT.composeWith(listenPort));
-        if (mtu != null)
-            sb.append(Attribute.MTU.composeWith(mtu));
-        if (privateKey != null)
-            sb.append(Attribute.PRIVATE_KEY.composeWith(privateKey));
-        return sb.toString();
+        return toSpec().toString();
     }
 
     @Override
@@ -0,0 +1,192 @@
+package com.wireguard.config;
+
+import com.wireguard.crypto.Key;
+import com.wireguard.crypto.Keypair;
+
+import java.util.Objects;
+
+/**
+ * Immutable configuration for a WireGuard interface (an [Interface] block). This is the
+ * representation used for parsing, storage, and the backends; {@link Interface} wraps it for
+ * editing in the UI.
+ */
+
+public final class InterfaceSpec {
+    private final String address;
+    private final Key decodedPrivateKey;
+    private final String dns;
+    private final long fingerprint;
+    private final String listenPort;
+    private final String mtu;
+    private final String privateKey;
+    private String publicKey;
+    private boolean isPublicKeyResolved;
+
+    private InterfaceSpec(final Builder builder) {
+        address = builder.address;
+        dns = builder.dns;
+        listenPort = builder.listenPort;
+        mtu = builder.mtu;
+        privateKey = builder.privateKey;
+        decodedPrivateKey = Key.parse(privateKey);
+        long hash = Fingerprint.INITIAL;
+        hash = Fingerprint.mix(hash, address);
+        hash = Fingerprint.mix(hash, dns);
+        hash = Fingerprint.mix(hash, listenPort);
+        hash = Fingerprint.mix(hash, mtu);
+        hash = Fingerprint.mix(hash, privateKey);
+        fingerprint = hash;
+    }
+
+    private static String emptyToNull(final String value) {
+        return value != null && value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof InterfaceSpec))
+            return false;
+        final InterfaceSpec other = (InterfaceSpec) obj;
+        return fingerprint == other.fingerprint
+                && Objects.equals(address, other.address)
+                && Objects.equals(dns, other.dns)
+                && Objects.equals(listenPort, other.listenPort)
+                && Objects.equals(mtu, other.mtu)
+                && Objects.equals(privateKey, other.privateKey);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the private key, decoded and validated once at construction, or null if it is
+     * missing or invalid.
+     */
+    public Key getDecodedPrivateKey() {
+        return decodedPrivateKey;
+    }
+
+    public String getDns() {
+        return dns;
+    }
+
+    /**
+     * Returns a 64-bit hash of the contents of this interface, computed once at construction.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getListenPort() {
+        return listenPort;
+    }
+
+    public String getMtu() {
+        return mtu;
+    }
+
+    public String getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * Returns the public key derived from the private key, or null if there is no valid private
+     * key. The derivation is deferred until first use, since most consumers never need it.
+     */
+    public synchronized String getPublicKey() {
+        if (!isPublicKeyResolved) {
+            if (decodedPrivateKey != null)
+                publicKey = new Keypair(decodedPrivateKey).getPublicKey();
+            isPublicKeyResolved = true;
+        }
+        return publicKey;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder().append("[Interface]\n");
+        if (address != null)
+            sb.append(Attribute.ADDRESS.composeWith(address));
+        if (dns != null)
+            sb.append(Attribute.DNS.composeWith(dns));
+        if (listenPort != null)
+            sb.append(Attribute.LISTEN_PORT.composeWith(listenPort));
+        if (mtu != null)
+            sb.append(Attribute.MTU.composeWith(mtu));
+        if (privateKey != null)
+            sb.append(Attribute.PRIVATE_KEY.composeWith(privateKey));
+        return sb.toString();
+    }
+
+    public static final class Builder {
+        private String address;
+        private String dns;
+        private String listenPort;
+        private String mtu;
+        private String privateKey;
+
+        public InterfaceSpec build() {
+            return new InterfaceSpec(this);
+        }
+
+        /**
+         * Sets the field corresponding to {@code key}.
+         *
+         * @return false if the attribute does not belong in this section.
+         */
+        boolean parse(final Attribute key, final String value) {
+            switch (key) {
+                case ADDRESS:
+                    setAddress(value);
+                    return true;
+                case DNS:
+                    setDns(value);
+                    return true;
+                case LISTEN_PORT:
+                    setListenPort(value);
+                    return true;
+                case MTU:
+                    setMtu(value);
+                    return true;
+                case PRIVATE_KEY:
+                    setPrivateKey(value);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        public Builder setAddress(final String address) {
+            this.address = emptyToNull(address);
+            return this;
+        }
+
+        public Builder setDns(final String dns) {
+            this.dns = emptyToNull(dns);
+            return this;
+        }
+
+        public Builder setListenPort(final String listenPort) {
+            this.listenPort = emptyToNull(listenPort);
+            return this;
+        }
+
+        public Builder setMtu(final String mtu) {
+            this.mtu = emptyToNull(mtu);
+            return this;
+        }
+
+        public Builder setPrivateKey(final String privateKey) {
+            this.privateKey = emptyToNull(privateKey);
+            return this;
+        }
+    }
+}
@@ -8,7 +8,8 @@ import android.os.Parcelable;
 import com.android.databinding.library.baseAdapters.BR;
 
 /**
- * Represents the configuration for a WireGuard peer (a [Peer] block).
+ * Editable, observable view of a WireGuard peer (a [Peer] block). See {@link PeerSpec} for the
+ * immutable form.
  */
 
 public class Peer extends BaseObservable implements Parcelable {
@@ -34,6 +35,14 @@ public class Peer extends BaseObservable implements Parcelable {
         // Do nothing.
     }
 
+    public Peer(final PeerSpec spec) {
+        allowedIPs = spec.getAllowedIPs();
+        endpoint = spec.getEndpoint();
+        persistentKeepalive = spec.getPersistentKeepalive();
+        preSharedKey = spec.getPreSharedKey();
+        publicKey = spec.getPublicKey();
+    }
+
     private Peer(final Parcel in) {
         allowedIPs = in.readString();
         endpoint = in.readString();
@@ -76,22 +85,6 @@ public class Peer extends BaseObservable implements Parcelable {
         return publicKey;
     }
 
-    public void parse(final String line) {
-        final Attribute key = Attribute.match(line);
-        if (key == Attribute.ALLOWED_IPS)
-            setAllowedIPs(key.parse(line));
-        else if (key == Attribute.ENDPOINT)
-            setEndpoint(key.parse(line));
-        else if (key == Attribute.PERSISTENT_KEEPALIVE)
-            setPersistentKeepalive(key.parse(line));
-        else if (key == Attribute.PRESHARED_KEY)
-            setPreSharedKey(key.parse(line));
-        else if (key == Attribute.PUBLIC_KEY)
-            setPublicKey(key.parse(line));
-        else
-            throw new IllegalArgumentException(line);
-    }
-
     public void setAllowedIPs(String allowedIPs) {
         if (allowedIPs != null && allowedIPs.isEmpty())
             allowedIPs = null;
@@ -127,20 +120,19 @@ public class Peer extends BaseObservable implements Parcelable {
         notifyPropertyChanged(BR.publicKey);
     }
 
+    public PeerSpec toSpec() {
+        return new PeerSpec.Builder()
+                .setAllowedIPs(allowedIPs)
+                .setEndpoint(endpoint)
+                .setPersistentKeepalive(persistentKeepalive)
+                .setPreSharedKey(preSharedKey)
+                .setPublicKey(publicKey)
+                .build();
+    }
+
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder().append("[Peer]\n");
-        if (allowedIPs != null)
-            sb.append(Attribute.ALLOWED_IPS.composeWith(allowedIPs));
-        if (endpoint != null)
-            sb.append(Attribute.ENDPOINT.composeWith(endpoint));
-        if (persistentKeepalive != null)
-            sb.append(Attribute.PERSISTENT_KEEPALIVE.composeWith(persistentKeepalive));
-        if (preSharedKey != null)
-            sb.append(Attribute.PRESHARED_KEY.composeWith(preSharedKey));
-        if (publicKey != null)
-            sb.append(Attribute.PUBLIC_KEY.composeWith(publicKey));
-        return sb.toString();
+        return toSpec().toString();
     }
 
     @Override
@@ -0,0 +1,185 @@
+package com.wireguard.config;
+
+import com.wireguard.crypto.Key;
+
+import java.util.Objects;
+
+/**
+ * Immutable configuration for a WireGuard peer (a [Peer] block). This is the representation used
+ * for parsing, storage, and the backends; {@link Peer} wraps it for editing in the UI.
+ */
+
+public final class PeerSpec {
+    private final String allowedIPs;
+    private final Key decodedPreSharedKey;
+    private final Key decodedPublicKey;
+    private final String endpoint;
+    private final long fingerprint;
+    private final String persistentKeepalive;
+    private final String preSharedKey;
+    private final String publicKey;
+
+    private PeerSpec(final Builder builder) {
+        allowedIPs = builder.allowedIPs;
+        endpoint = builder.endpoint;
+        persistentKeepalive = builder.persistentKeepalive;
+        preSharedKey = builder.preSharedKey;
+        publicKey = builder.publicKey;
+        decodedPreSharedKey = Key.parse(preSharedKey);
+        decodedPublicKey = Key.parse(publicKey);
+        long hash = Fingerprint.INITIAL;
+        hash = Fingerprint.mix(hash, allowedIPs);
+        hash = Fingerprint.mix(hash, endpoint);
+        hash = Fingerprint.mix(hash, persistentKeepalive);
+        hash = Fingerprint.mix(hash, preSharedKey);
+        hash = Fingerprint.mix(hash, publicKey);
+        fingerprint = hash;
+    }
+
+    private static String emptyToNull(final String value) {
+        return value != null && value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof PeerSpec))
+            return false;
+        final PeerSpec other = (PeerSpec) obj;
+        return fingerprint == other.fingerprint
+                && Objects.equals(allowedIPs, other.allowedIPs)
+                && Objects.equals(endpoint, other.endpoint)
+                && Objects.equals(persistentKeepalive, other.persistentKeepalive)
+                && Objects.equals(preSharedKey, other.preSharedKey)
+                && Objects.equals(publicKey, other.publicKey);
+    }
+
+    public String getAllowedIPs() {
+        return allowedIPs;
+    }
+
+    /**
+     * Returns the preshared key, decoded and validated once at construction, or null if it is
+     * missing or invalid.
+     */
+    public Key getDecodedPreSharedKey() {
+        return decodedPreSharedKey;
+    }
+
+    /**
+     * Returns the public key, decoded and validated once at construction, or null if it is
+     * missing or invalid.
+     */
+    public Key getDecodedPublicKey() {
+        return decodedPublicKey;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns a 64-bit hash of the contents of this peer, computed once at construction.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getPersistentKeepalive() {
+        return persistentKeepalive;
+    }
+
+    public String getPreSharedKey() {
+        return preSharedKey;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder().append("[Peer]\n");
+        if (allowedIPs != null)
+            sb.append(Attribute.ALLOWED_IPS.composeWith(allowedIPs));
+        if (endpoint != null)
+            sb.append(Attribute.ENDPOINT.composeWith(endpoint));
+        if (persistentKeepalive != null)
+            sb.append(Attribute.PERSISTENT_KEEPALIVE.composeWith(persistentKeepalive));
+        if (preSharedKey != null)
+            sb.append(Attribute.PRESHARED_KEY.composeWith(preSharedKey));
+        if (publicKey != null)
+            sb.append(Attribute.PUBLIC_KEY.composeWith(publicKey));
+        return sb.toString();
+    }
+
+    public static final class Builder {
+        private String allowedIPs;
+        private String endpoint;
+        private String persistentKeepalive;
+        private String preSharedKey;
+        private String publicKey;
+
+        public PeerSpec build() {
+            return new PeerSpec(this);
+        }
+
+        /**
+         * Sets the field corresponding to {@code key}.
+         *
+         * @return false if the attribute does not belong in this section.
+         */
+        boolean parse(final Attribute key, final String value) {
+            switch (key) {
+                case ALLOWED_IPS:
+                    setAllowedIPs(value);
+                    return true;
+                case ENDPOINT:
+                    setEndpoint(value);
+                    return true;
+                case PERSISTENT_KEEPALIVE:
+                    setPersistentKeepalive(value);
+                    return true;
+                case PRESHARED_KEY:
+                    setPreSharedKey(value);
+                    return true;
+                case PUBLIC_KEY:
+                    setPublicKey(value);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        public Builder setAllowedIPs(final String allowedIPs) {
+            this.allowedIPs = emptyToNull(allowedIPs);
+            return this;
+        }
+
+        public Builder setEndpoint(final String endpoint) {
+            this.endpoint = emptyToNull(endpoint);
+            return this;
+        }
+
+        public Builder setPersistentKeepalive(final String persistentKeepalive) {
+            this.persistentKeepalive = emptyToNull(persistentKeepalive);
+            return this;
+        }
+
+        public Builder setPreSharedKey(final String preSharedKey) {
+            this.preSharedKey = emptyToNull(preSharedKey);
+            return this;
+        }
+
+        public Builder setPublicKey(final String publicKey) {
+            this.publicKey = emptyToNull(publicKey);
+            return this;
+        }
+    }
+}
@@ -60,6 +60,33 @@ public final class Curve25519 {
 	private int[] CB;
 	private long[] t1;
 	private int[] t2;
+	private byte[] digits;
+	private int[] hX;
+	private int[] hY;
+	private int[] hZ;
+	private int[] hT;
+	private int[] rX;
+	private int[] rY;
+	private int[] rZ;
+	private int[] rT;
+	private int[] qYplusX;
+	private int[] qYminusX;
+	private int[] qXY2d;
+	private int[] t0;
+
+	// Edwards25519 base point (corresponding to u = 9) and the curve constant 2 * d.
+	private static final int[] BASE_X = {
+		0x325d51a, 0x18b5823, 0x27b2c95, 0x1825496, 0x0692cc7,
+		0x375b717, 0x24e231f, 0x14ffb02, 0x2d3cd6e, 0x0085a4d
+	};
+	private static final int[] BASE_Y = {
+		0x2666658, 0x1999999, 0x2666666, 0x1999999, 0x2666666,
+		0x1999999, 0x2666666, 0x1999999, 0x2666666, 0x0199999
+	};
+	private static final int[] D2 = {
+		0x2b2f159, 0x1a6e509, 0x3156ebd, 0x26a0a0e, 0x000e014,
+		0x3bcf44c, 0x0e80f2e, 0x3f39c66, 0x1dc56df, 0x00901b6
+	};
 
 	/**
 	 * Constructs the temporary state holder for Curve25519 evaluation.
@@ -107,6 +134,21 @@ public final class Curve25519 {
 		Arrays.fill(CB, 0);
 		Arrays.fill(t1,  0L);
 		Arrays.fill(t2,  0);
+		if (digits != null) {
+			Arrays.fill(digits, (byte)0);
+			Arrays.fill(hX, 0);
+			Arrays.fill(hY, 0);
+			Arrays.fill(hZ, 0);
+			Arrays.fill(hT, 0);
+			Arrays.fill(rX, 0);
+			Arrays.fill(rY, 0);
+			Arrays.fill(rZ, 0);
+			Arrays.fill(rT, 0);
+			Arrays.fill(qYplusX, 0);
+			Arrays.fill(qYminusX, 0);
+			Arrays.fill(qXY2d, 0);
+			Arrays.fill(t0, 0);
+		}
 	}
 
 	/**
@@ -475,10 +517,18 @@ public final class Curve25519 {
 	 */
 	public static void eval(byte[] result, int offset, byte[] privateKey, byte[] publicKey)
 	{
-		Curve25519 state = new Curve25519();
+		new Curve25519().evaluate(result, offset, privateKey, publicKey);
+	}
+
+	/**
+	 * Evaluates the curve using this object's temporary state, which is
+	 * destroyed again before returning.
+	 */
+	private void evaluate(byte[] result, int offset, byte[] privateKey, byte[] publicKey)
+	{
 		try {
 			// Unpack the public key value.  If null, use 9 as the base point.
-			Arrays.fill(state.x_1, 0);
+			Arrays.fill(x_1, 0);
 			if (publicKey != null) {
 				// Convert the input value from little-endian into 26-bit limbs.
 			    for (int index = 0; index < 32; ++index) {
@@ -486,50 +536,543 @@ public final class Curve25519 {
 			    	int word = (index * 8) / 26;
 			    	int value = publicKey[index] & 0xFF;
 			    	if (bit <= (26 - 8)) {
-			    		state.x_1[word] |= value << bit;
+			    		x_1[word] |= value << bit;
 			    	} else {
-			    		state.x_1[word] |= value << bit;
-			    		state.x_1[word] &= 0x03FFFFFF;
-			    		state.x_1[word + 1] |= value >> (26 - bit);
+			    		x_1[word] |= value << bit;
+			    		x_1[word] &= 0x03FFFFFF;
+			    		x_1[word + 1] |= value >> (26 - bit);
 			    	}
 			    }
 
 				// Just in case, we reduce the number modulo 2^255 - 19 to
 				// make sure that it is in range of the field before we start.
 				// This eliminates values between 2^255 - 19 and 2^256 - 1.
-				state.reduceQuick(state.x_1);
-				state.reduceQuick(state.x_1);
+				reduceQuick(x_1);
+				reduceQuick(x_1);
 			} else {
-				state.x_1[0] = 9;
+				x_1[0] = 9;
 			}
 
 			// Initialize the other temporary variables.
-			Arrays.fill(state.x_2, 0);			// x_2 = 1
-			state.x_2[0] = 1;
-			Arrays.fill(state.z_2, 0);			// z_2 = 0
-			System.arraycopy(state.x_1, 0, state.x_3, 0, state.x_1.length);  // x_3 = x_1
-			Arrays.fill(state.z_3, 0);			// z_3 = 1
-			state.z_3[0] = 1;
+			Arrays.fill(x_2, 0);			// x_2 = 1
+			x_2[0] = 1;
+			Arrays.fill(z_2, 0);			// z_2 = 0
+			System.arraycopy(x_1, 0, x_3, 0, x_1.length);  // x_3 = x_1
+			Arrays.fill(z_3, 0);			// z_3 = 1
+			z_3[0] = 1;
 
 			// Evaluate the curve for every bit of the private key.
-			state.evalCurve(privateKey);
+			evalCurve(privateKey);
 
 		    // Compute x_2 * (z_2 ^ (p - 2)) where p = 2^255 - 19.
-		    state.recip(state.z_3, state.z_2);
-		    state.mul(state.x_2, state.x_2, state.z_3);
+		    recip(z_3, z_2);
+		    mul(x_2, x_2, z_3);
 
 		    // Convert x_2 into little-endian in the result buffer.
-		    for (int index = 0; index < 32; ++index) {
-		    	int bit = (index * 8) % 26;
-		    	int word = (index * 8) / 26;
-		    	if (bit <= (26 - 8))
-		    		result[offset + index] = (byte)(state.x_2[word] >> bit);
-		    	else
-		    		result[offset + index] = (byte)((state.x_2[word] >> bit) | (state.x_2[word + 1] << (26 - bit)));
-		    }
+		    pack(result, offset, x_2);
 		} finally {
 			// Clean up all temporary state before we exit.
-			state.destroy();
+			destroy();
+		}
+	}
+
+	/**
+	 * Converts a fully reduced number into little-endian bytes.
+	 *
+	 * @param result Buffer to place the 32 bytes into.
+	 * @param offset Offset into the result buffer.
+	 * @param x The number to convert.
+	 */
+	private static void pack(byte[] result, int offset, int[] x)
+	{
+	    for (int index = 0; index < 32; ++index) {
+	    	int bit = (index * 8) % 26;
+	    	int word = (index * 8) / 26;
+	    	if (bit <= (26 - 8))
+	    		result[offset + index] = (byte)(x[word] >> bit);
+	    	else
+	    		result[offset + index] = (byte)((x[word] >> bit) | (x[word + 1] << (26 - bit)));
+	    }
+	}
+
+	/**
+	 * Evaluates the Curve25519 curve against the base point, giving the
+	 * same result as {@link #eval(byte[], int, byte[], byte[])} with a null
+	 * public key in a fraction of the time.
+	 *
+	 * The scalar multiplication is done on the birationally equivalent
+	 * twisted Edwards curve using a precomputed table of multiples of the
+	 * base point and a signed radix-16 window, as in the ref10 Ed25519 code.
+	 * All table lookups touch every entry, so the running time does not
+	 * depend on the private key.
+	 *
+	 * @param result Buffer to place the result of the evaluation into.
+	 * @param offset Offset into the result buffer.
+	 * @param privateKey The private key to use in the evaluation.
+	 */
+	public static void evalBase(byte[] result, int offset, byte[] privateKey)
+	{
+		new Curve25519().evaluateBase(result, offset, privateKey);
+	}
+
+	/**
+	 * Evaluates the Curve25519 curve against the base point for a batch of
+	 * private keys. The results are identical to calling
+	 * {@link #evalBase(byte[], int, byte[])} on each key, but the final field
+	 * inversions are combined so that the whole batch needs only one.
+	 *
+	 * @param results Buffer of at least 32 * count bytes to place the
+	 * results of the evaluations into.
+	 * @param privateKeys The private keys to use, 32 bytes each.
+	 * @param count The number of keys.
+	 */
+	public static void evalBaseBatch(byte[] results, byte[] privateKeys, int count)
+	{
+		new Curve25519().evaluateBaseBatch(results, privateKeys, count);
+	}
+
+	/**
+	 * Allocates the temporary variables used for fixed-base evaluation.
+	 * These are only needed by some callers, so they are created on demand.
+	 */
+	private void allocateEdwardsState()
+	{
+		if (digits != null)
+			return;
+		digits = new byte [64];
+		hX = new int [NUM_LIMBS_255BIT];
+		hY = new int [NUM_LIMBS_255BIT];
+		hZ = new int [NUM_LIMBS_255BIT];
+		hT = new int [NUM_LIMBS_255BIT];
+		rX = new int [NUM_LIMBS_255BIT];
+		rY = new int [NUM_LIMBS_255BIT];
+		rZ = new int [NUM_LIMBS_255BIT];
+		rT = new int [NUM_LIMBS_255BIT];
+		qYplusX = new int [NUM_LIMBS_255BIT];
+		qYminusX = new int [NUM_LIMBS_255BIT];
+		qXY2d = new int [NUM_LIMBS_255BIT];
+		t0 = new int [NUM_LIMBS_255BIT];
+	}
+
+	/**
+	 * Evaluates the curve against the base point using this object's
+	 * temporary state, which is destroyed again before returning.
+	 */
+	private void evaluateBase(byte[] result, int offset, byte[] privateKey)
+	{
+		try {
+			multiplyBase(privateKey, 0);
+
+			// Map to the Montgomery curve: u = (1 + y) / (1 - y) = (Z + Y) / (Z - Y).
+			sub(C, hZ, hY);
+			recip(B, C);
+			add(C, hZ, hY);
+			mul(C, C, B);
+			pack(result, offset, C);
+		} finally {
+			// Clean up all temporary state before we exit.
+			destroy();
+		}
+	}
+
+	/**
+	 * Evaluates the curve against the base point for several private keys,
+	 * sharing a single field inversion between all of them.
+	 *
+	 * @param results Buffer to place the 32-byte results into, one after
+	 * the other.
+	 * @param privateKeys The 32-byte private keys, one after the other.
+	 * @param count The number of keys to evaluate.
+	 */
+	private void evaluateBaseBatch(byte[] results, byte[] privateKeys, int count)
+	{
+		int[][] numerators = new int [count][NUM_LIMBS_255BIT];
+		int[][] products = new int [count][NUM_LIMBS_255BIT];
+		int index;
+
+		try {
+			// Compute every point and keep the numerator and denominator of
+			// u = (Z + Y) / (Z - Y).  products[i] is the product of the first
+			// i + 1 denominators.
+			for (index = 0; index < count; ++index) {
+				multiplyBase(privateKeys, index * 32);
+				add(numerators[index], hZ, hY);
+				sub(C, hZ, hY);
+				if (index == 0)
+					System.arraycopy(C, 0, products[0], 0, NUM_LIMBS_255BIT);
+				else
+					mul(products[index], products[index - 1], C);
+				// Hold on to the denominator itself in the result buffer's
+				// place, since it is needed again when walking back down.
+				pack(results, index * 32, C);
+			}
+
+			// Invert the product of all denominators once, then peel off
+			// one denominator at a time (Montgomery's trick).
+			if (count > 0)
+				recip(D, products[count - 1]);
+			for (index = count - 1; index >= 0; --index) {
+				if (index > 0) {
+					mul(B, D, products[index - 1]);
+					unpack(C, results, index * 32);
+					mul(D, D, C);
+				} else {
+					System.arraycopy(D, 0, B, 0, NUM_LIMBS_255BIT);
+				}
+				mul(C, numerators[index], B);
+				pack(results, index * 32, C);
+			}
+		} finally {
+			// Clean up all temporary state before we exit.
+			for (index = 0; index < count; ++index) {
+				Arrays.fill(numerators[index], 0);
+				Arrays.fill(products[index], 0);
+			}
+			destroy();
+		}
+	}
+
+	/**
+	 * Converts 32 little-endian bytes into a number, which must already
+	 * be fully reduced.
+	 *
+	 * @param result The result.
+	 * @param x Buffer holding the bytes to convert.
+	 * @param offset Offset into the buffer.
+	 */
+	private static void unpack(int[] result, byte[] x, int offset)
+	{
+		Arrays.fill(result, 0);
+	    for (int index = 0; index < 32; ++index) {
+	    	int bit = (index * 8) % 26;
+	    	int word = (index * 8) / 26;
+	    	int value = x[offset + index] & 0xFF;
+	    	if (bit <= (26 - 8)) {
+	    		result[word] |= value << bit;
+	    	} else {
+	    		result[word] |= value << bit;
+	    		result[word] &= 0x03FFFFFF;
+	    		result[word + 1] |= value >> (26 - bit);
+	    	}
+	    }
+	}
+
+	/**
+	 * Multiplies the base point by a clamped private key, leaving the
+	 * result in h in extended coordinates.
+	 *
+	 * @param privateKey Buffer holding the 32-byte private key.
+	 * @param offset Offset of the private key in the buffer.
+	 */
+	private void multiplyBase(byte[] privateKey, int offset)
+	{
+		int[][] table = FixedBaseTable.TABLE;
+		int index, carry;
+
+		allocateEdwardsState();
+
+		// Clamp the private key and split it into 64 signed radix-16
+		// digits between -8 and 8, least significant first.
+		for (index = 0; index < 32; ++index) {
+			int value = privateKey[offset + index] & 0xFF;
+			if (index == 0)
+				value &= 0xF8;
+			else if (index == 31)
+				value = (value & 0x7F) | 0x40;
+			digits[2 * index] = (byte)(value & 0x0F);
+			digits[2 * index + 1] = (byte)(value >> 4);
+		}
+		carry = 0;
+		for (index = 0; index < 63; ++index) {
+			digits[index] += carry;
+			carry = (digits[index] + 8) >> 4;
+			digits[index] -= carry << 4;
+		}
+		digits[63] += carry;
+
+		// h = 0, the neutral element.
+		Arrays.fill(hX, 0);
+		Arrays.fill(hY, 0);
+		hY[0] = 1;
+		Arrays.fill(hZ, 0);
+		hZ[0] = 1;
+		Arrays.fill(hT, 0);
+
+		// Add the odd digits, multiply by 16, then add the even digits.
+		for (index = 1; index < 64; index += 2) {
+			select(table, index / 2, digits[index]);
+			addPrecomputed();
+			toExtended();
+		}
+		for (index = 0; index < 4; ++index) {
+			doublePoint();
+			if (index < 3)
+				toProjective();
+			else
+				toExtended();
+		}
+		for (index = 0; index < 64; index += 2) {
+			select(table, index / 2, digits[index]);
+			addPrecomputed();
+			toExtended();
+		}
+	}
+
+	/**
+	 * Conditional move of one value into another.
+	 *
+	 * @param select Set to 1 to move, 0 to leave as-is.
+	 * @param result The value to overwrite.
+	 * @param x The value to move.
+	 */
+	private static void cmove(int select, int[] result, int[] x)
+	{
+		select = -select;
+		for (int index = 0; index < NUM_LIMBS_255BIT; ++index)
+			result[index] ^= select & (result[index] ^ x[index]);
+	}
+
+	/**
+	 * Loads the precomputed multiple digit * 256^position * B into q,
+	 * in constant time.
+	 *
+	 * @param table The table of precomputed multiples.
+	 * @param position Which power of 256 to use.
+	 * @param digit The multiplier, between -8 and 8.
+	 */
+	private void select(int[][] table, int position, int digit)
+	{
+		int negative = (digit >> 31) & 0x01;
+		int abs = digit - (((-negative) & digit) << 1);
+
+		// Start with the neutral element and pick up the matching entry.
+		Arrays.fill(qYplusX, 0);
+		qYplusX[0] = 1;
+		Arrays.fill(qYminusX, 0);
+		qYminusX[0] = 1;
+		Arrays.fill(qXY2d, 0);
+		for (int index = 0; index < 8; ++index) {
+			int equal = ((abs ^ (index + 1)) - 1) >>> 31;
+			int row = (position * 8 + index) * 3;
+			cmove(equal, qYplusX, table[row]);
+			cmove(equal, qYminusX, table[row + 1]);
+			cmove(equal, qXY2d, table[row + 2]);
+		}
+
+		// Negating (x, y) gives (-x, y), which swaps y + x with y - x
+		// and negates 2 * d * x * y.
+		cswap(negative, qYplusX, qYminusX);
+		Arrays.fill(t0, 0);
+		sub(t0, t0, qXY2d);
+		cmove(negative, qXY2d, t0);
+	}
+
+	/**
+	 * Adds the precomputed affine point q to the extended point h, leaving
+	 * the completed result in r.
+	 */
+	private void addPrecomputed()
+	{
+		add(rX, hY, hX);
+		sub(rY, hY, hX);
+		mul(rZ, rX, qYplusX);
+		mul(rY, rY, qYminusX);
+		mul(rT, qXY2d, hT);
+		add(t0, hZ, hZ);
+		sub(rX, rZ, rY);
+		add(rY, rZ, rY);
+		add(rZ, t0, rT);
+		sub(rT, t0, rT);
+	}
+
+	/**
+	 * Adds the cached point q, whose Z coordinate is given separately, to
+	 * the extended point h, leaving the completed result in r.
+	 *
+	 * @param qZ The Z coordinate of q.
+	 */
+	private void addCached(int[] qZ)
+	{
+		add(rX, hY, hX);
+		sub(rY, hY, hX);
+		mul(rZ, rX, qYplusX);
+		mul(rY, rY, qYminusX);
+		mul(rT, qXY2d, hT);
+		mul(t0, hZ, qZ);
+		add(t0, t0, t0);
+		sub(rX, rZ, rY);
+		add(rY, rZ, rY);
+		add(rZ, t0, rT);
+		sub(rT, t0, rT);
+	}
+
+	/**
+	 * Doubles the projective point (hX : hY : hZ), leaving the completed
+	 * result in r.
+	 */
+	private void doublePoint()
+	{
+		square(rX, hX);
+		square(rZ, hY);
+		square(rT, hZ);
+		add(rT, rT, rT);
+		add(rY, hX, hY);
+		square(t0, rY);
+		add(rY, rZ, rX);
+		sub(rZ, rZ, rX);
+		sub(rX, t0, rY);
+		sub(rT, rT, rZ);
+	}
+
+	/**
+	 * Converts the completed point r into projective coordinates in h.
+	 */
+	private void toProjective()
+	{
+		mul(hX, rX, rT);
+		mul(hY, rY, rZ);
+		mul(hZ, rZ, rT);
+	}
+
+	/**
+	 * Converts the completed point r into extended coordinates in h.
+	 */
+	private void toExtended()
+	{
+		toProjective();
+		mul(hT, rX, rY);
+	}
+
+	/**
+	 * Computes the table of multiples (j + 1) * 256^i * B of the base point
+	 * for 0 <= i < 32 and 0 <= j < 8. Each entry is stored in affine form
+	 * as the three values y + x, y - x, and 2 * d * x * y.
+	 */
+	private int[][] computeTable()
+	{
+		int[][] table = new int [32 * 8 * 3][];
+		int[][] xs = new int [32 * 8][];
+		int[][] ys = new int [32 * 8][];
+		int[][] zs = new int [32 * 8][];
+		int[][] products = new int [32 * 8][];
+		int[] zInverse = new int [NUM_LIMBS_255BIT];
+		int[] inverse = new int [NUM_LIMBS_255BIT];
+		int[] baseZ = new int [NUM_LIMBS_255BIT];
+		int index, position;
+
+		allocateEdwardsState();
+
+		// The first point is B itself, with Z = 1 and T = x * y.
+		int[] pX = BASE_X.clone();
+		int[] pY = BASE_Y.clone();
+		int[] pZ = new int [NUM_LIMBS_255BIT];
+		pZ[0] = 1;
+		int[] pT = new int [NUM_LIMBS_255BIT];
+		mul(pT, pX, pY);
+
+		for (position = 0; position < 32; ++position) {
+			// Cache (Y + X, Y - X, 2 * d * T) and Z of P = 256^position * B.
+			add(qYplusX, pY, pX);
+			sub(qYminusX, pY, pX);
+			mul(qXY2d, pT, D2);
+			System.arraycopy(pZ, 0, baseZ, 0, NUM_LIMBS_255BIT);
+
+			// Walk through P, 2P, ..., 8P by repeated addition.
+			System.arraycopy(pX, 0, hX, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(pY, 0, hY, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(pZ, 0, hZ, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(pT, 0, hT, 0, NUM_LIMBS_255BIT);
+			for (index = 0; index < 8; ++index) {
+				int entry = position * 8 + index;
+				xs[entry] = hX.clone();
+				ys[entry] = hY.clone();
+				zs[entry] = hZ.clone();
+				if (index == 7)
+					break;
+				addCached(baseZ);
+				toExtended();
+			}
+
+			// P = 256 * P.
+			System.arraycopy(pX, 0, hX, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(pY, 0, hY, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(pZ, 0, hZ, 0, NUM_LIMBS_255BIT);
+			for (index = 0; index < 8; ++index) {
+				doublePoint();
+				if (index < 7)
+					toProjective();
+				else
+					toExtended();
+			}
+			System.arraycopy(hX, 0, pX, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(hY, 0, pY, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(hZ, 0, pZ, 0, NUM_LIMBS_255BIT);
+			System.arraycopy(hT, 0, pT, 0, NUM_LIMBS_255BIT);
+		}
+
+		// Invert all of the Z coordinates at once using Montgomery's trick.
+		products[0] = zs[0].clone();
+		for (index = 1; index < 32 * 8; ++index) {
+			products[index] = new int [NUM_LIMBS_255BIT];
+			mul(products[index], products[index - 1], zs[index]);
+		}
+		recip(inverse, products[32 * 8 - 1]);
+		for (index = 32 * 8 - 1; index >= 0; --index) {
+			if (index > 0) {
+				mul(zInverse, inverse, products[index - 1]);
+				mul(inverse, inverse, zs[index]);
+			} else {
+				System.arraycopy(inverse, 0, zInverse, 0, NUM_LIMBS_255BIT);
+			}
+			int[] yPlusX = new int [NUM_LIMBS_255BIT];
+			int[] yMinusX = new int [NUM_LIMBS_255BIT];
+			int[] xy2d = new int [NUM_LIMBS_255BIT];
+			mul(rX, xs[index], zInverse);
+			mul(rY, ys[index], zInverse);
+			add(yPlusX, rY, rX);
+			sub(yMinusX, rY, rX);
+			mul(xy2d, rX, rY);
+			mul(xy2d, xy2d, D2);
+			table[index * 3] = yPlusX;
+			table[index * 3 + 1] = yMinusX;
+			table[index * 3 + 2] = xy2d;
+		}
+		return table;
+	}
+
+	/**
+	 * Holder for the fixed-base table, which is computed the first time
+	 * it is needed.
+	 */
+	private static final class FixedBaseTable {
+		static final int[][] TABLE = new Curve25519().computeTable();
+	}
+
+	/**
+	 * A reusable Curve25519 evaluator. It keeps its temporary state between
+	 * calls, so evaluating many keys allocates nothing after construction;
+	 * the state is still wiped after every evaluation. Instances are not
+	 * thread-safe and should be confined to a single thread.
+	 */
+	public static final class Evaluator {
+		private final Curve25519 state = new Curve25519();
+
+		/**
+		 * Evaluates the Curve25519 curve, with the same arguments as
+		 * {@link Curve25519#eval(byte[], int, byte[], byte[])}.
+		 */
+		public void eval(byte[] result, int offset, byte[] privateKey, byte[] publicKey)
+		{
+			state.evaluate(result, offset, privateKey, publicKey);
+		}
+
+		/**
+		 * Evaluates the Curve25519 curve against the base point, with the
+		 * same arguments as {@link Curve25519#evalBase(byte[], int, byte[])}.
+		 */
+		public void evalBase(byte[] result, int offset, byte[] privateKey)
+		{
+			state.evaluateBase(result, offset, privateKey);
 		}
 	}
 }
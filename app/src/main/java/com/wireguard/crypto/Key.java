@@ -0,0 +1,92 @@
+package com.wireguard.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * An immutable, validated 32-byte WireGuard key. The base64 and hex encodings are computed at most
+ * once and then cached, so repeatedly handing a key to a backend costs no further decoding.
+ */
+
+public final class Key {
+    private final byte[] key;
+    private String base64;
+    private String hex;
+
+    private Key(final byte[] key) {
+        this.key = key;
+    }
+
+    public static Key fromBase64(final String str) {
+        final Key result = new Key(KeyEncoding.keyFromBase64(str));
+        result.base64 = str;
+        return result;
+    }
+
+    public static Key fromBytes(final byte[] bytes) {
+        if (bytes.length != KeyEncoding.KEY_LENGTH)
+            throw new IllegalArgumentException("WireGuard keys must be 32 bytes");
+        return new Key(Arrays.copyOf(bytes, bytes.length));
+    }
+
+    /**
+     * Decodes a base64 key, returning null instead of throwing if it is missing or invalid.
+     */
+    public static Key parse(final String str) {
+        if (str == null || str.length() != KeyEncoding.KEY_LENGTH_BASE64)
+            return null;
+        try {
+            return fromBase64(str);
+        } catch (final IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this)
+            return true;
+        // Compare in constant time, since keys may be secret.
+        return obj instanceof Key && MessageDigest.isEqual(key, ((Key) obj).key);
+    }
+
+    /**
+     * Returns a copy of the raw key bytes.
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOf(key, key.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(key);
+    }
+
+    public String toBase64() {
+        if (base64 == null)
+            base64 = KeyEncoding.keyToBase64(key);
+        return base64;
+    }
+
+    public String toHex() {
+        if (hex == null)
+            hex = KeyEncoding.keyToHex(key);
+        return hex;
+    }
+
+    /**
+     * Writes the key as ASCII hex at the current position of {@code dest}, advancing it by 64
+     * bytes.
+     */
+    public void writeHex(final ByteBuffer dest) {
+        KeyEncoding.keyToHex(key, 0, dest);
+    }
+
+    /**
+     * Returns the raw key bytes without copying. Callers must not modify the array.
+     */
+    byte[] unwrap() {
+        return key;
+    }
+}
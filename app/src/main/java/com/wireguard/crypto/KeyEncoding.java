@@ -2,8 +2,15 @@
 
 package com.wireguard.crypto;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * This is a specialized constant-time base64 and hex implementation that resists side-channel attacks.
+ *
+ * Besides the String-based methods, there are overloads that read from any CharSequence (including
+ * CharBuffer) or from ASCII bytes in a ByteBuffer, and write into caller-supplied arrays or
+ * buffers, so keys can be encoded and decoded in bulk without any intermediate allocation.
  */
 
 @SuppressWarnings("MagicNumber")
@@ -22,10 +29,19 @@ public final class KeyEncoding {
         // Prevent instantiation.
     }
 
-    private static int decodeBase64(final char[] src, final int src_offset) {
+    /**
+     * Returns the character at {@code index} of whichever of {@code chars} or the ASCII
+     * {@code bytes} is not null, so that each decoder has one implementation for both.
+     */
+    private static char charAt(final CharSequence chars, final ByteBuffer bytes, final int index) {
+        return chars != null ? chars.charAt(index) : (char) (bytes.get(index) & 0xff);
+    }
+
+    private static int decodeBase64(final CharSequence chars, final ByteBuffer bytes,
+                                    final int src_offset, final int count) {
         int val = 0;
-        for (int i = 0; i < 4; ++i) {
-            final char c = src[i + src_offset];
+        for (int i = 0; i < count; ++i) {
+            final char c = charAt(chars, bytes, i + src_offset);
             val |= (-1
                     + ((((('A' - 1) - c) & (c - ('Z' + 1))) >>> 8) & (c - 64))
                     + ((((('a' - 1) - c) & (c - ('z' + 1))) >>> 8) & (c - 70))
@@ -37,102 +53,259 @@ public final class KeyEncoding {
         return val;
     }
 
-    private static void encodeBase64(final byte[] src, final int src_offset,
-                                     final char[] dest, final int dest_offset) {
-        final byte[] input = {
-                (byte) ((src[src_offset] >>> 2) & 63),
-                (byte) ((src[src_offset] << 4 | ((src[1 + src_offset] & 0xff) >>> 4)) & 63),
-                (byte) ((src[1 + src_offset] << 2 | ((src[2 + src_offset] & 0xff) >>> 6)) & 63),
-                (byte) ((src[2 + src_offset]) & 63),
-        };
-        for (int i = 0; i < 4; ++i) {
-            dest[i + dest_offset] = (char) (input[i] + 'A'
-                    + (((25 - input[i]) >>> 8) & 6)
-                    - (((51 - input[i]) >>> 8) & 75)
-                    - (((61 - input[i]) >>> 8) & 15)
-                    + (((62 - input[i]) >>> 8) & 3));
+    private static char encodeBase64(final int sextet) {
+        return (char) (sextet + 'A'
+                + (((25 - sextet) >>> 8) & 6)
+                - (((51 - sextet) >>> 8) & 75)
+                - (((61 - sextet) >>> 8) & 15)
+                + (((62 - sextet) >>> 8) & 3));
+    }
+
+    private static int decodeHex(final char c) {
+        final int c_num = c ^ 48;
+        final int c_num0 = (c_num - 10) >> 8;
+        final int c_alpha = (c & ~32) - 55;
+        final int c_alpha0 = ((c_alpha - 10) ^ (c_alpha - 16)) >> 8;
+        if ((c_num0 | c_alpha0) == 0)
+            throw new IllegalArgumentException(KEY_LENGTH_HEX_EXCEPTION_MESSAGE);
+        return (c_num0 & c_num) | (c_alpha0 & c_alpha);
+    }
+
+    private static char encodeHex(final int nibble) {
+        return (char) (87 + nibble + (((nibble - 10) >> 8) & ~38));
+    }
+
+    /**
+     * Returns the i-th character of the base64 encoding of the key at {@code key[key_offset]}.
+     */
+    private static char base64CharAt(final byte[] key, final int key_offset, final int i) {
+        if (i == KEY_LENGTH_BASE64 - 1)
+            return '=';
+        final int group = (i / 4) * 3 + key_offset;
+        final int b0 = key[group] & 0xff;
+        final int b1 = key[group + 1] & 0xff;
+        // The last group only encodes two bytes; pad it with a zero.
+        final int b2 = i / 4 < KEY_LENGTH / 3 ? key[group + 2] & 0xff : 0;
+        switch (i % 4) {
+            case 0:
+                return encodeBase64(b0 >>> 2);
+            case 1:
+                return encodeBase64((b0 << 4 | b1 >>> 4) & 63);
+            case 2:
+                return encodeBase64((b1 << 2 | b2 >>> 6) & 63);
+            default:
+                return encodeBase64(b2 & 63);
         }
     }
 
+    /**
+     * Returns the i-th character of the hex encoding of the key at {@code key[key_offset]}.
+     */
+    private static char hexCharAt(final byte[] key, final int key_offset, final int i) {
+        final int b = key[key_offset + i / 2];
+        return encodeHex((i & 1) == 0 ? b >> 4 & 0xf : b & 0xf);
+    }
+
+    private static void checkKeyLength(final byte[] key) {
+        if (key.length != KEY_LENGTH)
+            throw new IllegalArgumentException(KEY_LENGTH_EXCEPTION_MESSAGE);
+    }
+
     public static byte[] keyFromBase64(final String str) {
-        final char[] input = str.toCharArray();
+        if (str.length() != KEY_LENGTH_BASE64)
+            throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
         final byte[] key = new byte[KEY_LENGTH];
-        if (input.length != KEY_LENGTH_BASE64 || input[KEY_LENGTH_BASE64 - 1] != '=')
+        keyFromBase64(str, 0, key, 0);
+        return key;
+    }
+
+    /**
+     * Decodes the 44 characters at {@code src[src_offset]} into the 32 bytes at
+     * {@code dest[dest_offset]}.
+     */
+    public static void keyFromBase64(final CharSequence src, final int src_offset,
+                                     final byte[] dest, final int dest_offset) {
+        if (src.length() - src_offset < KEY_LENGTH_BASE64)
+            throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
+        keyFromBase64(src, null, src_offset, dest, dest_offset);
+    }
+
+    /**
+     * Decodes the 44 ASCII bytes at the current position of {@code src} into the 32 bytes at
+     * {@code dest[dest_offset]}, advancing {@code src} past them.
+     */
+    public static void keyFromBase64(final ByteBuffer src, final byte[] dest,
+                                     final int dest_offset) {
+        if (src.remaining() < KEY_LENGTH_BASE64)
+            throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
+        keyFromBase64(null, src, src.position(), dest, dest_offset);
+        src.position(src.position() + KEY_LENGTH_BASE64);
+    }
+
+    private static void keyFromBase64(final CharSequence chars, final ByteBuffer bytes,
+                                      final int src_offset, final byte[] dest,
+                                      final int dest_offset) {
+        if (charAt(chars, bytes, src_offset + KEY_LENGTH_BASE64 - 1) != '=')
             throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
         int i;
         for (i = 0; i < KEY_LENGTH / 3; ++i) {
-            final int val = decodeBase64(input, i * 4);
+            final int val = decodeBase64(chars, bytes, src_offset + i * 4, 4);
             if (val < 0)
                 throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
-            key[i * 3] = (byte) ((val >>> 16) & 0xff);
-            key[i * 3 + 1] = (byte) ((val >>> 8) & 0xff);
-            key[i * 3 + 2] = (byte) (val & 0xff);
+            dest[dest_offset + i * 3] = (byte) ((val >>> 16) & 0xff);
+            dest[dest_offset + i * 3 + 1] = (byte) ((val >>> 8) & 0xff);
+            dest[dest_offset + i * 3 + 2] = (byte) (val & 0xff);
         }
-        final char[] endSegment = {
-                input[i * 4],
-                input[i * 4 + 1],
-                input[i * 4 + 2],
-                'A',
-        };
-        final int val = decodeBase64(endSegment, 0);
+        // The last group has one padding character, which decodes as if it were 'A'.
+        final int val = decodeBase64(chars, bytes, src_offset + i * 4, 3);
         if (val < 0 || (val & 0xff) != 0)
             throw new IllegalArgumentException(KEY_LENGTH_BASE64_EXCEPTION_MESSAGE);
-        key[i * 3] = (byte) ((val >>> 16) & 0xff);
-        key[i * 3 + 1] = (byte) ((val >>> 8) & 0xff);
-        return key;
+        dest[dest_offset + i * 3] = (byte) ((val >>> 16) & 0xff);
+        dest[dest_offset + i * 3 + 1] = (byte) ((val >>> 8) & 0xff);
+    }
+
+    /**
+     * Decodes {@code count} consecutive base64 keys, each followed by {@code separator}
+     * characters, into consecutive 32-byte keys in {@code dest}.
+     */
+    public static void keysFromBase64(final CharSequence src, final int src_offset, final int separator,
+                                      final byte[] dest, final int dest_offset, final int count) {
+        for (int i = 0; i < count; ++i)
+            keyFromBase64(src, src_offset + i * (KEY_LENGTH_BASE64 + separator),
+                    dest, dest_offset + i * KEY_LENGTH);
     }
 
     public static String keyToBase64(final byte[] key) {
+        checkKeyLength(key);
         final char[] output = new char[KEY_LENGTH_BASE64];
-        if (key.length != KEY_LENGTH)
-            throw new IllegalArgumentException(KEY_LENGTH_EXCEPTION_MESSAGE);
-        int i;
-        for (i = 0; i < KEY_LENGTH / 3; ++i)
-            encodeBase64(key, i * 3, output, i * 4);
-        final byte[] endSegment = {
-                key[i * 3],
-                key[i * 3 + 1],
-                0,
-        };
-        encodeBase64(endSegment, 0, output, i * 4);
-        output[KEY_LENGTH_BASE64 - 1] = '=';
+        keyToBase64(key, 0, output, 0);
         return new String(output);
     }
 
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} into the 44 characters at
+     * {@code dest[dest_offset]}.
+     */
+    public static void keyToBase64(final byte[] key, final int key_offset,
+                                   final char[] dest, final int dest_offset) {
+        for (int i = 0; i < KEY_LENGTH_BASE64; ++i)
+            dest[dest_offset + i] = base64CharAt(key, key_offset, i);
+    }
+
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} as base64 at the current position of
+     * {@code dest}, advancing it by 44 characters.
+     */
+    public static void keyToBase64(final byte[] key, final int key_offset, final CharBuffer dest) {
+        for (int i = 0; i < KEY_LENGTH_BASE64; ++i)
+            dest.put(base64CharAt(key, key_offset, i));
+    }
+
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} as ASCII base64 at the current position of
+     * {@code dest}, advancing it by 44 bytes.
+     */
+    public static void keyToBase64(final byte[] key, final int key_offset, final ByteBuffer dest) {
+        for (int i = 0; i < KEY_LENGTH_BASE64; ++i)
+            dest.put((byte) base64CharAt(key, key_offset, i));
+    }
+
     public static byte[] keyFromHex(final String str) {
-        final char[] input = str.toCharArray();
+        if (str.length() != KEY_LENGTH_HEX)
+            throw new IllegalArgumentException(KEY_LENGTH_HEX_EXCEPTION_MESSAGE);
         final byte[] key = new byte[KEY_LENGTH];
-        if (input.length != KEY_LENGTH_HEX)
+        keyFromHex(str, 0, key, 0);
+        return key;
+    }
+
+    /**
+     * Decodes the 64 characters at {@code src[src_offset]} into the 32 bytes at
+     * {@code dest[dest_offset]}.
+     */
+    public static void keyFromHex(final CharSequence src, final int src_offset,
+                                  final byte[] dest, final int dest_offset) {
+        if (src.length() - src_offset < KEY_LENGTH_HEX)
+            throw new IllegalArgumentException(KEY_LENGTH_HEX_EXCEPTION_MESSAGE);
+        keyFromHex(src, null, src_offset, dest, dest_offset);
+    }
+
+    /**
+     * Decodes the 64 ASCII bytes at the current position of {@code src} into the 32 bytes at
+     * {@code dest[dest_offset]}, advancing {@code src} past them. This is the form used by the
+     * UAPI.
+     */
+    public static void keyFromHex(final ByteBuffer src, final byte[] dest, final int dest_offset) {
+        if (src.remaining() < KEY_LENGTH_HEX)
             throw new IllegalArgumentException(KEY_LENGTH_HEX_EXCEPTION_MESSAGE);
+        keyFromHex(null, src, src.position(), dest, dest_offset);
+        src.position(src.position() + KEY_LENGTH_HEX);
+    }
 
-        int c, c_acc = 0, c_alpha0, c_alpha, c_num0, c_num, c_val, state = 0;
-
-        for (int i = 0; i < KEY_LENGTH_HEX; ++i) {
-            c = input[i];
-            c_num = c ^ 48;
-            c_num0 = (c_num - 10) >>8;
-            c_alpha = (c & ~32) - 55;
-            c_alpha0 = ((c_alpha - 10) ^ (c_alpha - 16)) >> 8;
-            if ((c_num0 | c_alpha0) == 0)
-                throw new IllegalArgumentException(KEY_LENGTH_HEX_EXCEPTION_MESSAGE);
-            c_val = (c_num0 & c_num) | (c_alpha0 & c_alpha);
-            if (state == 0)
-                c_acc = c_val * 16;
-            else
-                key[i / 2] = (byte)(c_acc | c_val);
-            state = ~state;
+    private static void keyFromHex(final CharSequence chars, final ByteBuffer bytes,
+                                   final int src_offset, final byte[] dest,
+                                   final int dest_offset) {
+        for (int i = 0; i < KEY_LENGTH; ++i) {
+            final int high = decodeHex(charAt(chars, bytes, src_offset + i * 2));
+            final int low = decodeHex(charAt(chars, bytes, src_offset + i * 2 + 1));
+            dest[dest_offset + i] = (byte) (high << 4 | low);
         }
-        return key;
+    }
+
+    /**
+     * Decodes {@code count} consecutive hex keys, each followed by {@code separator}
+     * characters, into consecutive 32-byte keys in {@code dest}.
+     */
+    public static void keysFromHex(final CharSequence src, final int src_offset, final int separator,
+                                   final byte[] dest, final int dest_offset, final int count) {
+        for (int i = 0; i < count; ++i)
+            keyFromHex(src, src_offset + i * (KEY_LENGTH_HEX + separator),
+                    dest, dest_offset + i * KEY_LENGTH);
     }
 
     public static String keyToHex(final byte[] key) {
+        checkKeyLength(key);
         final char[] output = new char[KEY_LENGTH_HEX];
-        if (key.length != KEY_LENGTH)
-            throw new IllegalArgumentException(KEY_LENGTH_EXCEPTION_MESSAGE);
-        for (int i = 0; i < KEY_LENGTH; ++i) {
-            output[i * 2] = (char)(87 + (key[i] >> 4 & 0xf) + ((((key[i] >> 4 & 0xf) - 10) >> 8) & ~38));
-            output[i * 2 + 1] = (char)(87 + (key[i] & 0xf) + ((((key[i] & 0xf) - 10) >> 8) & ~38));
-        }
+        keyToHex(key, 0, output, 0);
         return new String(output);
     }
+
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} into the 64 characters at
+     * {@code dest[dest_offset]}.
+     */
+    public static void keyToHex(final byte[] key, final int key_offset,
+                                final char[] dest, final int dest_offset) {
+        for (int i = 0; i < KEY_LENGTH_HEX; ++i)
+            dest[dest_offset + i] = hexCharAt(key, key_offset, i);
+    }
+
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} as hex at the current position of
+     * {@code dest}, advancing it by 64 characters.
+     */
+    public static void keyToHex(final byte[] key, final int key_offset, final CharBuffer dest) {
+        for (int i = 0; i < KEY_LENGTH_HEX; ++i)
+            dest.put(hexCharAt(key, key_offset, i));
+    }
+
+    /**
+     * Encodes the 32 bytes at {@code key[key_offset]} as ASCII hex at the current position of
+     * {@code dest}, advancing it by 64 bytes. This is the form used by the UAPI.
+     */
+    public static void keyToHex(final byte[] key, final int key_offset, final ByteBuffer dest) {
+        for (int i = 0; i < KEY_LENGTH_HEX; ++i)
+            dest.put((byte) hexCharAt(key, key_offset, i));
+    }
+
+    /**
+     * Encodes {@code count} consecutive 32-byte keys as ASCII hex at the current position of
+     * {@code dest}, writing {@code separator} after each one.
+     */
+    public static void keysToHex(final byte[] keys, final int keys_offset, final int count,
+                                 final ByteBuffer dest, final byte separator) {
+        for (int i = 0; i < count; ++i) {
+            keyToHex(keys, keys_offset + i * KEY_LENGTH, dest);
+            dest.put(separator);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.wireguard.crypto;
 
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * Represents a Curve25519 keypair as used by WireGuard.
@@ -16,27 +17,70 @@ public class Keypair {
     }
 
     private Keypair(final byte[] privateKey) {
+        this(privateKey, generatePublicKey(privateKey));
+    }
+
+    private Keypair(final byte[] privateKey, final byte[] publicKey) {
         this.privateKey = privateKey;
-        publicKey = generatePublicKey(privateKey);
+        this.publicKey = publicKey;
     }
 
     public Keypair(final String privateKey) {
         this(KeyEncoding.keyFromBase64(privateKey));
     }
 
-    private static byte[] generatePrivateKey() {
+    public Keypair(final Key privateKey) {
+        this(privateKey.unwrap());
+    }
+
+    /**
+     * Generates {@code count} new keypairs. This is equivalent to constructing each one separately,
+     * but the public keys are derived together, sharing a single field inversion.
+     *
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public static Keypair[] generateBatch(final int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Keypair count must not be negative");
+        if (count == 0)
+            return new Keypair[0];
         final SecureRandom secureRandom = new SecureRandom();
+        final byte[] privateKeys = new byte[count * KeyEncoding.KEY_LENGTH];
+        final byte[] publicKeys = new byte[count * KeyEncoding.KEY_LENGTH];
+        final Keypair[] keypairs = new Keypair[count];
+        for (int i = 0; i < count; ++i)
+            generatePrivateKey(secureRandom, privateKeys, i * KeyEncoding.KEY_LENGTH);
+        Curve25519.evalBaseBatch(publicKeys, privateKeys, count);
+        for (int i = 0; i < count; ++i) {
+            final int from = i * KeyEncoding.KEY_LENGTH;
+            final int to = from + KeyEncoding.KEY_LENGTH;
+            keypairs[i] = new Keypair(Arrays.copyOfRange(privateKeys, from, to),
+                    Arrays.copyOfRange(publicKeys, from, to));
+        }
+        Arrays.fill(privateKeys, (byte) 0);
+        return keypairs;
+    }
+
+    private static byte[] generatePrivateKey() {
+        final byte[] privateKey = new byte[KeyEncoding.KEY_LENGTH];
+        generatePrivateKey(new SecureRandom(), privateKey, 0);
+        return privateKey;
+    }
+
+    private static void generatePrivateKey(final SecureRandom secureRandom, final byte[] buffer,
+                                           final int offset) {
         final byte[] privateKey = new byte[KeyEncoding.KEY_LENGTH];
         secureRandom.nextBytes(privateKey);
         privateKey[0] &= 248;
         privateKey[31] &= 127;
         privateKey[31] |= 64;
-        return privateKey;
+        System.arraycopy(privateKey, 0, buffer, offset, privateKey.length);
+        Arrays.fill(privateKey, (byte) 0);
     }
 
     private static byte[] generatePublicKey(final byte[] privateKey) {
         final byte[] publicKey = new byte[KeyEncoding.KEY_LENGTH];
-        Curve25519.eval(publicKey, 0, privateKey, null);
+        Curve25519.evalBase(publicKey, 0, privateKey);
         return publicKey;
     }
 
@@ -0,0 +1,94 @@
+package com.wireguard.android.backend;
+
+import com.wireguard.crypto.Key;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Formatter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times building the UAPI settings for 5k peers with {@link UapiWriter} against the
+ * {@link Formatter} scheme it replaced, including the UTF-8 copy that JNI made of that string.
+ */
+
+public class UapiWriterBenchmarkTest {
+    private static final int MEASURED_RUNS = 5;
+    private static final int PEER_COUNT = 5000;
+    private static final int WARMUP_RUNS = 5;
+
+    private static String allowedIps(final int peer) {
+        return "10." + (peer >> 8) + '.' + (peer & 0xff) + ".0/24, fd00:" +
+                Integer.toHexString(peer) + "::/64";
+    }
+
+    private static String endpoint(final int peer) {
+        return "192.0.2." + (peer & 0xff) + ':' + (51820 + peer % 100);
+    }
+
+    private static byte[] formatSettings(final Key privateKey, final Key[] publicKeys) {
+        final Formatter fmt = new Formatter(new StringBuilder());
+        fmt.format("replace_peers=true\n");
+        fmt.format("private_key=%s\n", privateKey.toHex());
+        fmt.format("listen_port=%d\n", 51820);
+        for (int i = 0; i < publicKeys.length; ++i) {
+            fmt.format("public_key=%s\n", publicKeys[i].toHex());
+            fmt.format("endpoint=%s\n", endpoint(i));
+            fmt.format("persistent_keepalive_interval=%d\n", 25);
+            for (final String allowedIp : allowedIps(i).split("\\s*,\\s*"))
+                fmt.format("allowed_ip=%s\n", allowedIp);
+        }
+        return fmt.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static UapiWriter writeSettings(final Key privateKey, final Key[] publicKeys) {
+        final UapiWriter writer = new UapiWriter(publicKeys.length * 256);
+        writer.write("replace_peers", true);
+        writer.write("private_key", privateKey);
+        writer.write("listen_port", 51820);
+        for (int i = 0; i < publicKeys.length; ++i) {
+            writer.write("public_key", publicKeys[i]);
+            writer.write("endpoint", endpoint(i));
+            writer.write("persistent_keepalive_interval", 25);
+            writer.writeAllowedIps(allowedIps(i));
+        }
+        return writer;
+    }
+
+    @Test
+    public void writeFiveThousandPeers() {
+        final byte[] bytes = new byte[32];
+        bytes[0] = 1;
+        final Key privateKey = Key.fromBytes(bytes);
+        final Key[] publicKeys = new Key[PEER_COUNT];
+        for (int i = 0; i < PEER_COUNT; ++i) {
+            bytes[1] = (byte) i;
+            bytes[2] = (byte) (i >> 8);
+            publicKeys[i] = Key.fromBytes(bytes);
+        }
+
+        long formatterNanos = Long.MAX_VALUE;
+        long writerNanos = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; ++run) {
+            long start = System.nanoTime();
+            final byte[] formatted = formatSettings(privateKey, publicKeys);
+            final long formatterRun = System.nanoTime() - start;
+            start = System.nanoTime();
+            final UapiWriter writer = writeSettings(privateKey, publicKeys);
+            final long writerRun = System.nanoTime() - start;
+
+            final ByteBuffer written = writer.buffer().duplicate();
+            written.flip();
+            assertEquals(ByteBuffer.wrap(formatted), written);
+            if (run < WARMUP_RUNS)
+                continue;
+            formatterNanos = Math.min(formatterNanos, formatterRun);
+            writerNanos = Math.min(writerNanos, writerRun);
+        }
+        System.out.printf("UAPI settings, %d peers: Formatter and UTF-8 copy %.1f ms; "
+                + "UapiWriter %.1f ms%n", PEER_COUNT, formatterNanos / 1e6, writerNanos / 1e6);
+    }
+}
@@ -0,0 +1,92 @@
+package com.wireguard.android.util;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import java9.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the latency of short commands through {@link RootShell}, alone and while a slow
+ * command is running, using a fake su that runs sh and claims to be root.
+ */
+
+public class RootShellBenchmarkTest {
+    private static final int MEASURED_RUNS = 50;
+    private static final int SLOW_COMMAND_SECONDS = 5;
+    private static final int WARMUP_RUNS = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private RootShell rootShell;
+
+    private static double median(final long[] nanos) {
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1e6;
+    }
+
+    private static File writeScript(final File file, final String script) throws IOException {
+        Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        if (!file.setExecutable(true))
+            throw new IOException("Could not make " + file + " executable");
+        return file;
+    }
+
+    private long[] measureShortCommands() throws Exception {
+        final long[] nanos = new long[MEASURED_RUNS];
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; ++run) {
+            final long start = System.nanoTime();
+            assertEquals(0, rootShell.runAsync("echo ok").toCompletableFuture()
+                    .get(SLOW_COMMAND_SECONDS, TimeUnit.SECONDS).getExitValue());
+            if (run >= WARMUP_RUNS)
+                nanos[run - WARMUP_RUNS] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        final File bin = folder.newFolder("bin");
+        writeScript(new File(bin, "id"), "#!/bin/sh\necho 0\n");
+        final File su = writeScript(folder.newFile("su"),
+                "#!/bin/sh\nPATH='" + bin + "':$PATH exec sh\n");
+        final Context context = mock(Context.class);
+        when(context.getCacheDir()).thenReturn(folder.newFolder("cache"));
+        rootShell = new RootShell(context, su.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        rootShell.stop();
+    }
+
+    @Test
+    public void shortCommandsOverlapSlowCommand() throws Exception {
+        rootShell.start();
+        final long[] idle = measureShortCommands();
+        final CompletableFuture<RootShell.Result> slow =
+                rootShell.runAsync("sleep " + SLOW_COMMAND_SECONDS).toCompletableFuture();
+        final long[] busy = measureShortCommands();
+        // The short commands went to other shells instead of queueing behind the slow one.
+        assertFalse(slow.isDone());
+        assertEquals(0, slow.get().getExitValue());
+        System.out.printf("RootShell short command latency: %.2f ms idle, "
+                + "%.2f ms beside a slow command%n", median(idle), median(busy));
+    }
+}
@@ -0,0 +1,95 @@
+package com.wireguard.config;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times {@link ConfigSpec#from} on a 10k-peer configuration against the regex scheme that the
+ * tokenizer replaced: one {@code Pattern.split} and one per-attribute match for every line.
+ */
+
+public class ConfigSpecBenchmarkTest {
+    private static final String[] KEYS = {"Address", "AllowedIPs", "DNS", "Endpoint", "ListenPort",
+            "MTU", "PersistentKeepalive", "PresharedKey", "PrivateKey", "PublicKey"};
+    private static final int MEASURED_RUNS = 5;
+    private static final int PEER_COUNT = 10000;
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile("\\s|=");
+    private static final int WARMUP_RUNS = 3;
+
+    private static byte[] buildConfig() {
+        final StringBuilder sb = new StringBuilder(PEER_COUNT * 200);
+        sb.append("[Interface]\n");
+        sb.append("PrivateKey = yAnz5TF+lXXJte14tji3zlMNq+hd2rYUIgJBgB3fBmk=\n");
+        sb.append("Address = 10.0.0.1/16\n");
+        sb.append("ListenPort = 51820\n");
+        for (int i = 0; i < PEER_COUNT; ++i) {
+            sb.append("\n[Peer]\n");
+            sb.append("PublicKey = xTIBA5rboUvnH4htodjb6e697QjLERt1NAB4mZqp8Dg=\n");
+            sb.append("AllowedIPs = 10.0.").append(i / 256).append('.').append(i % 256)
+                    .append("/32, fd00::").append(Integer.toHexString(i)).append("/128\n");
+            sb.append("Endpoint = 192.0.2.").append(i % 256).append(":51820\n");
+            sb.append("PersistentKeepalive = 25\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int parseWithRegexes(final byte[] config, final Pattern[] patterns)
+            throws IOException {
+        int attributes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(config), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("["))
+                    continue;
+                final String key = SEPARATOR_PATTERN.split(line)[0];
+                for (int i = 0; i < KEYS.length; ++i) {
+                    if (!KEYS[i].equals(key))
+                        continue;
+                    final Matcher matcher = patterns[i].matcher(line);
+                    if (matcher.matches() && matcher.group(1) != null)
+                        ++attributes;
+                    break;
+                }
+            }
+        }
+        return attributes;
+    }
+
+    @Test
+    public void parseTenThousandPeers() throws IOException {
+        final byte[] config = buildConfig();
+        final Pattern[] patterns = new Pattern[KEYS.length];
+        for (int i = 0; i < KEYS.length; ++i)
+            patterns[i] = Pattern.compile(KEYS[i] + "\\s*=\\s*(\\S.*)");
+
+        long tokenizerNanos = Long.MAX_VALUE;
+        long regexNanos = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; ++run) {
+            long start = System.nanoTime();
+            final ConfigSpec spec = ConfigSpec.from(new ByteArrayInputStream(config));
+            final long tokenizerRun = System.nanoTime() - start;
+            start = System.nanoTime();
+            final int attributes = parseWithRegexes(config, patterns);
+            final long regexRun = System.nanoTime() - start;
+            assertEquals(PEER_COUNT, spec.getPeers().size());
+            assertEquals(3 + 4 * PEER_COUNT, attributes);
+            if (run < WARMUP_RUNS)
+                continue;
+            tokenizerNanos = Math.min(tokenizerNanos, tokenizerRun);
+            regexNanos = Math.min(regexNanos, regexRun);
+        }
+        System.out.printf("ConfigSpec.from, %d peers: %.1f ms (tokenizer and model); "
+                        + "regex split and match alone: %.1f ms%n", PEER_COUNT,
+                tokenizerNanos / 1e6, regexNanos / 1e6);
+    }
+}
@@ -0,0 +1,95 @@
+package com.wireguard.crypto;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Measures throughput and allocation of a reused {@link Curve25519.Evaluator} against the static
+ * {@link Curve25519#eval}, which allocates fresh state for every call.
+ */
+
+public class Curve25519BenchmarkTest {
+    private static final int KEY_COUNT = 256;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int WARMUP_ROUNDS = 5;
+
+    private interface Operation {
+        void run(byte[] result, byte[] privateKey, byte[] publicKey);
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void measure(final String name, final Operation operation,
+                                final byte[][] privateKeys, final byte[] publicKey) {
+        final byte[] result = new byte[KeyEncoding.KEY_LENGTH];
+        long bestNanos = Long.MAX_VALUE;
+        long bytes = -1;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round) {
+            final long startBytes = allocatedBytes();
+            final long start = System.nanoTime();
+            for (final byte[] privateKey : privateKeys)
+                operation.run(result, privateKey, publicKey);
+            final long nanos = System.nanoTime() - start;
+            final long endBytes = allocatedBytes();
+            if (round < WARMUP_ROUNDS)
+                continue;
+            bestNanos = Math.min(bestNanos, nanos);
+            if (startBytes >= 0)
+                bytes = endBytes - startBytes;
+        }
+        System.out.printf("%s: %.0f ops/s, %s bytes allocated per op%n", name,
+                KEY_COUNT * 1e9 / bestNanos, bytes < 0 ? "unknown" : bytes / KEY_COUNT);
+    }
+
+    private static byte[][] privateKeys() {
+        final byte[][] keys = new byte[KEY_COUNT][];
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            keys[i] = new byte[KeyEncoding.KEY_LENGTH];
+            Arrays.fill(keys[i], (byte) (i + 1));
+            keys[i][0] &= 248;
+            keys[i][31] &= 127;
+            keys[i][31] |= 64;
+        }
+        return keys;
+    }
+
+    @Test
+    public void evaluatorMatchesStaticEval() {
+        final Curve25519.Evaluator evaluator = new Curve25519.Evaluator();
+        final byte[] publicKey = new byte[KeyEncoding.KEY_LENGTH];
+        Curve25519.evalBase(publicKey, 0, privateKeys()[0]);
+        for (final byte[] privateKey : privateKeys()) {
+            final byte[] expected = new byte[KeyEncoding.KEY_LENGTH];
+            final byte[] actual = new byte[KeyEncoding.KEY_LENGTH];
+            Curve25519.eval(expected, 0, privateKey, publicKey);
+            evaluator.eval(actual, 0, privateKey, publicKey);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void benchmarkEval() {
+        final byte[][] privateKeys = privateKeys();
+        final byte[] publicKey = new byte[KeyEncoding.KEY_LENGTH];
+        Curve25519.evalBase(publicKey, 0, privateKeys[0]);
+        final Curve25519.Evaluator evaluator = new Curve25519.Evaluator();
+        measure("Curve25519.eval", (result, privateKey, peerKey) ->
+                Curve25519.eval(result, 0, privateKey, peerKey), privateKeys, publicKey);
+        measure("Curve25519.Evaluator.eval", (result, privateKey, peerKey) ->
+                evaluator.eval(result, 0, privateKey, peerKey), privateKeys, publicKey);
+    }
+}
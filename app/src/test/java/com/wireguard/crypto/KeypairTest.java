@@ -0,0 +1,24 @@
+package com.wireguard.crypto;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeypairTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void generateBatchRejectsNegativeCount() {
+        Keypair.generateBatch(-1);
+    }
+
+    @Test
+    public void generateBatchOfZeroIsEmpty() {
+        assertEquals(0, Keypair.generateBatch(0).length);
+    }
+
+    @Test
+    public void generateBatchMatchesSingleDerivation() {
+        for (final Keypair keypair : Keypair.generateBatch(8))
+            assertEquals(new Keypair(keypair.getPrivateKey()).getPublicKey(),
+                    keypair.getPublicKey());
+    }
+}
@@ -0,0 +1,363 @@
+package main
+
+// #include <stdlib.h>
+import "C"
+
+import (
+	"bufio"
+	"bytes"
+	"io/ioutil"
+	"log"
+	"math"
+	"os"
+	"strconv"
+	"sync"
+	"sync/atomic"
+	"unsafe"
+)
+
+const (
+	logLevelError = iota
+	logLevelInfo
+	logLevelDebug
+)
+
+const (
+	logRingSlots    = 1024
+	logRingLineSize = 256
+)
+
+type logSlot struct {
+	sequence uint64 // 0 while being written, otherwise the slot's position + 1
+	level    int32
+	length   int32
+	line     [logRingLineSize]byte
+}
+
+// logRing is a bounded ring of log lines shared by all devices. Writers never
+// block or allocate: each claims the next position with an atomic increment
+// and overwrites whatever was there, so the oldest lines are lost if Java
+// does not drain the ring often enough. Each slot's sequence number works as
+// a seqlock, letting the drainer detect slots that were overwritten while it
+// was copying them. Every line dropped either way is counted and reported.
+type logRing struct {
+	head       uint64
+	tail       uint64 // guarded by drainMutex
+	lost       uint64 // guarded by drainMutex
+	drainMutex sync.Mutex
+	slots      [logRingSlots]logSlot
+}
+
+var logLines logRing
+var logLevel int32 = logLevelInfo
+
+func (ring *logRing) put(level int32, prefix string, message []byte) {
+	position := atomic.AddUint64(&ring.head, 1) - 1
+	slot := &ring.slots[position%logRingSlots]
+	atomic.StoreUint64(&slot.sequence, 0)
+	for len(message) > 0 && message[len(message)-1] == '\n' {
+		message = message[:len(message)-1]
+	}
+	n := copy(slot.line[:], prefix)
+	n += copy(slot.line[n:], ": ")
+	n += copy(slot.line[n:], message)
+	slot.level = level
+	slot.length = int32(n)
+	atomic.StoreUint64(&slot.sequence, position+1)
+}
+
+type ringLogger struct {
+	level         int32
+	interfaceName string
+}
+
+func (l *ringLogger) Write(p []byte) (int, error) {
+	if atomic.LoadInt32(&logLevel) >= l.level {
+		logLines.put(l.level, l.interfaceName, p)
+	}
+	return len(p), nil
+}
+
+// appendLost writes a line reporting the lines lost since the last report to
+// out at offset n, if there were any and it fits, and returns the new offset.
+func (ring *logRing) appendLost(out []byte, n int) int {
+	if ring.lost == 0 {
+		return n
+	}
+	line := append(strconv.AppendUint(append(out[n:n], 'E'), ring.lost, 10), " log lines lost\n"...)
+	if len(line) > len(out)-n {
+		return n
+	}
+	ring.lost = 0
+	return n + len(line)
+}
+
+//export wgSetLogLevel
+func wgSetLogLevel(level int32) {
+	atomic.StoreInt32(&logLevel, level)
+}
+
+// wgDrainLog copies the log lines written since the last call into buffer,
+// each as a level character ('E', 'I', or 'D') followed by the text and a
+// newline, and returns the number of bytes written. Lines that do not fit
+// are left for the next call.
+//export wgDrainLog
+func wgDrainLog(buffer unsafe.Pointer, length int32) int32 {
+	if length <= 0 {
+		return 0
+	}
+	out := (*[1 << 30]byte)(buffer)[:length:length]
+	ring := &logLines
+	ring.drainMutex.Lock()
+	defer ring.drainMutex.Unlock()
+	head := atomic.LoadUint64(&ring.head)
+	if head-ring.tail > logRingSlots {
+		ring.lost += head - ring.tail - logRingSlots
+		ring.tail = head - logRingSlots
+	}
+	n := ring.appendLost(out, 0)
+	for ring.tail < head {
+		slot := &ring.slots[ring.tail%logRingSlots]
+		sequence := atomic.LoadUint64(&slot.sequence)
+		if sequence == 0 || sequence < ring.tail+1 {
+			// Still being written, or claimed but still holding the previous lap's
+			// line; pick it up next time.
+			break
+		}
+		if sequence > ring.tail+1 {
+			// Overwritten by a later lap.
+			ring.tail++
+			ring.lost++
+			continue
+		}
+		size := int(slot.length) + 2
+		if n+size > len(out) {
+			break
+		}
+		switch slot.level {
+		case logLevelError:
+			out[n] = 'E'
+		case logLevelInfo:
+			out[n] = 'I'
+		default:
+			out[n] = 'D'
+		}
+		copy(out[n+1:], slot.line[:slot.length])
+		out[n+size-1] = '\n'
+		ring.tail++
+		if atomic.LoadUint64(&slot.sequence) == sequence {
+			n += size
+		} else {
+			ring.lost++
+		}
+	}
+	return int32(ring.appendLost(out, n))
+}
+
+// handleTable maps the integer handles given to Java onto devices. Released
+// slots are kept on a free list, so allocating a handle is O(1) and handles
+// stay small and dense no matter how many tunnels come and go.
+type handleTable struct {
+	mutex   sync.RWMutex
+	devices []*Device
+	free    []int32
+}
+
+var tunnelHandles handleTable
+
+func (table *handleTable) insert(device *Device) int32 {
+	table.mutex.Lock()
+	defer table.mutex.Unlock()
+	if n := len(table.free); n > 0 {
+		handle := table.free[n-1]
+		table.free = table.free[:n-1]
+		table.devices[handle] = device
+		return handle
+	}
+	if len(table.devices) == math.MaxInt32 {
+		return -1
+	}
+	table.devices = append(table.devices, device)
+	return int32(len(table.devices) - 1)
+}
+
+func (table *handleTable) get(handle int32) (*Device, bool) {
+	table.mutex.RLock()
+	defer table.mutex.RUnlock()
+	if handle < 0 || int(handle) >= len(table.devices) || table.devices[handle] == nil {
+		return nil, false
+	}
+	return table.devices[handle], true
+}
+
+func (table *handleTable) remove(handle int32) (*Device, bool) {
+	table.mutex.Lock()
+	defer table.mutex.Unlock()
+	if handle < 0 || int(handle) >= len(table.devices) || table.devices[handle] == nil {
+		return nil, false
+	}
+	device := table.devices[handle]
+	table.devices[handle] = nil
+	table.free = append(table.free, handle)
+	return device, true
+}
+
+// settingsReader reads UAPI settings straight out of a buffer owned by the
+// caller, which must stay valid until the settings have been applied.
+func settingsReader(settings unsafe.Pointer, length int32) *bufio.ReadWriter {
+	var buffer []byte
+	if length > 0 {
+		buffer = (*[1 << 30]byte)(settings)[:length:length]
+	}
+	return bufio.NewReadWriter(bufio.NewReader(bytes.NewReader(buffer)), bufio.NewWriter(ioutil.Discard))
+}
+
+//export wgTurnOn
+func wgTurnOn(ifnameRef string, tun_fd int32, mtu int32, settings unsafe.Pointer, settingsLength int32) int32 {
+	interfaceName := string([]byte(ifnameRef))
+
+	logger := &Logger{
+		Debug: log.New(&ringLogger{level: logLevelDebug, interfaceName: interfaceName}, "", 0),
+		Info:  log.New(&ringLogger{level: logLevelInfo, interfaceName: interfaceName}, "", 0),
+		Error: log.New(&ringLogger{level: logLevelError, interfaceName: interfaceName}, "", 0),
+	}
+
+	tun := &NativeTun{
+		fd:     os.NewFile(uintptr(tun_fd), ""),
+		events: make(chan TUNEvent, 5),
+		errors: make(chan error, 5),
+		nopi:   true,
+	}
+	device := NewDevice(tun, logger)
+	if mtu <= 0 {
+		mtu = DefaultMTU
+	}
+	atomic.StoreInt32(&device.tun.mtu, mtu)
+
+	setError := ipcSetOperation(device, settingsReader(settings, settingsLength))
+	if setError != nil {
+		logger.Debug.Println(setError)
+		device.Close()
+		return -1
+	}
+
+	device.Up()
+	logger.Info.Println("Device started")
+
+	handle := tunnelHandles.insert(device)
+	if handle < 0 {
+		device.Close()
+	}
+	return handle
+}
+
+//export wgSetConfig
+func wgSetConfig(tunnelHandle int32, settings unsafe.Pointer, settingsLength int32) int32 {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok {
+		return -1
+	}
+	setError := ipcSetOperation(device, settingsReader(settings, settingsLength))
+	if setError != nil {
+		device.log.Error.Println(setError)
+		return -1
+	}
+	return 0
+}
+
+//export wgGetConfig
+func wgGetConfig(tunnelHandle int32) *C.char {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok {
+		return nil
+	}
+	settings := new(bytes.Buffer)
+	writer := bufio.NewWriter(settings)
+	getError := ipcGetOperation(device, bufio.NewReadWriter(bufio.NewReader(settings), writer))
+	if getError != nil {
+		device.log.Error.Println(getError)
+		return nil
+	}
+	writer.Flush()
+	// The caller must free the returned string.
+	return C.CString(settings.String())
+}
+
+//export wgSetMtu
+func wgSetMtu(tunnelHandle int32, mtu int32) int32 {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok || mtu <= 0 {
+		return -1
+	}
+	atomic.StoreInt32(&device.tun.mtu, mtu)
+	device.log.Info.Println("MTU set to", mtu)
+	return 0
+}
+
+//export wgTurnOff
+func wgTurnOff(tunnelHandle int32) {
+	device, ok := tunnelHandles.remove(tunnelHandle)
+	if !ok {
+		return
+	}
+	device.Close()
+}
+
+// Each statistics record is the peer's 32-byte public key followed by its
+// received bytes, transmitted bytes, and last handshake time in nanoseconds
+// since the epoch, as native-endian 64-bit integers.
+const statisticsRecordSize = 32 + 3*8
+
+//export wgGetStatistics
+func wgGetStatistics(tunnelHandle int32, buffer unsafe.Pointer, length int32) int32 {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok {
+		return -1
+	}
+	out := (*[1 << 30]byte)(buffer)[:length:length]
+	device.peers.mutex.RLock()
+	defer device.peers.mutex.RUnlock()
+	// Return the number of peers even if they do not all fit, so the caller
+	// can retry with a larger buffer.
+	var count int32
+	for key, peer := range device.peers.keyMap {
+		offset := int(count) * statisticsRecordSize
+		count++
+		if offset+statisticsRecordSize > len(out) {
+			continue
+		}
+		copy(out[offset:offset+32], key[:])
+		*(*uint64)(unsafe.Pointer(&out[offset+32])) = atomic.LoadUint64(&peer.stats.rxBytes)
+		*(*uint64)(unsafe.Pointer(&out[offset+40])) = atomic.LoadUint64(&peer.stats.txBytes)
+		*(*int64)(unsafe.Pointer(&out[offset+48])) = atomic.LoadInt64(&peer.stats.lastHandshakeNano)
+	}
+	return count
+}
+
+//export wgGetSocketV4
+func wgGetSocketV4(tunnelHandle int32) int32 {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok {
+		return -1
+	}
+	native, ok := device.net.bind.(NativeBind)
+	if !ok {
+		return -1
+	}
+	return int32(native.sock4)
+}
+
+//export wgGetSocketV6
+func wgGetSocketV6(tunnelHandle int32) int32 {
+	device, ok := tunnelHandles.get(tunnelHandle)
+	if !ok {
+		return -1
+	}
+	native, ok := device.net.bind.(NativeBind)
+	if !ok {
+		return -1
+	}
+	return int32(native.sock6)
+}
+
+func main() {}
@@ -0,0 +1,115 @@
+package main
+
+import (
+	"bytes"
+	"strconv"
+	"sync"
+	"testing"
+	"unsafe"
+)
+
+const lostSuffix = " log lines lost"
+
+// drainLog calls wgDrainLog once, records the text of each line it returns in
+// lines, and returns the number of bytes drained and of lines reported lost.
+func drainLog(t *testing.T, buffer []byte, lines map[string]bool) (int32, uint64) {
+	n := wgDrainLog(unsafe.Pointer(&buffer[0]), int32(len(buffer)))
+	var lost uint64
+	for _, line := range bytes.Split(buffer[:n], []byte{'\n'}) {
+		if len(line) == 0 {
+			continue
+		}
+		if line[0] == 'E' && bytes.HasSuffix(line, []byte(lostSuffix)) {
+			count, err := strconv.ParseUint(string(line[1:len(line)-len(lostSuffix)]), 10, 64)
+			if err != nil {
+				t.Fatalf("malformed line %q", line)
+			}
+			lost += count
+			continue
+		}
+		lines[string(line[1:])] = true
+	}
+	return n, lost
+}
+
+func writerLine(writer int, line int) string {
+	return "writer" + strconv.Itoa(writer) + ": " + strconv.Itoa(line)
+}
+
+// Lines that are claimed but not yet written when the drainer reaches them
+// must be picked up later, not reported as lost.
+func TestDrainLogConcurrentWithWriters(t *testing.T) {
+	const writers = 4
+	// Fewer lines than slots in total, so the ring can never overrun.
+	const linesPerWriter = logRingSlots/writers - 1
+	logLines = logRing{}
+	var wait sync.WaitGroup
+	for w := 0; w < writers; w++ {
+		wait.Add(1)
+		go func(w int) {
+			defer wait.Done()
+			for i := 0; i < linesPerWriter; i++ {
+				logLines.put(logLevelInfo, "writer"+strconv.Itoa(w), []byte(strconv.Itoa(i)+"\n"))
+			}
+		}(w)
+	}
+	done := make(chan struct{})
+	go func() {
+		wait.Wait()
+		close(done)
+	}()
+	buffer := make([]byte, 4096)
+	lines := make(map[string]bool)
+	var lost uint64
+	for finished := false; !finished; {
+		select {
+		case <-done:
+			finished = true
+		default:
+		}
+		_, l := drainLog(t, buffer, lines)
+		lost += l
+	}
+	for {
+		n, l := drainLog(t, buffer, lines)
+		lost += l
+		if n == 0 {
+			break
+		}
+	}
+	if lost != 0 {
+		t.Errorf("%d lines reported lost without an overrun", lost)
+	}
+	for w := 0; w < writers; w++ {
+		for i := 0; i < linesPerWriter; i++ {
+			if !lines[writerLine(w, i)] {
+				t.Fatalf("line %q was not drained", writerLine(w, i))
+			}
+		}
+	}
+}
+
+func TestDrainLogCountsOverrun(t *testing.T) {
+	const written = 2 * logRingSlots
+	logLines = logRing{}
+	for i := 0; i < written; i++ {
+		logLines.put(logLevelInfo, "writer0", []byte(strconv.Itoa(i)))
+	}
+	buffer := make([]byte, 4096)
+	lines := make(map[string]bool)
+	var lost uint64
+	for {
+		n, l := drainLog(t, buffer, lines)
+		lost += l
+		if n == 0 {
+			break
+		}
+	}
+	if lost != written-logRingSlots || len(lines) != logRingSlots {
+		t.Errorf("drained %d lines and lost %d, want %d and %d", len(lines), lost,
+			logRingSlots, written-logRingSlots)
+	}
+	if !lines[writerLine(0, written-1)] {
+		t.Errorf("newest line was not drained")
+	}
+}
@@ -1,34 +1,71 @@
 #include <jni.h>
+#include <stdlib.h>
 
 struct go_string { const char *str; long n; };
-extern int wgTurnOn(struct go_string ifname, int tun_fd, struct go_string settings);
+extern int wgTurnOn(struct go_string ifname, int tun_fd, int mtu, void *settings, int settings_len);
+extern int wgSetConfig(int handle, void *settings, int settings_len);
+extern char *wgGetConfig(int handle);
+extern int wgSetMtu(int handle, int mtu);
+extern void wgSetLogLevel(int level);
+extern int wgDrainLog(void *buffer, int length);
 extern void wgTurnOff(int handle);
+extern int wgGetStatistics(int handle, void *buffer, int length);
 extern int wgGetSocketV4(int handle);
 extern int wgGetSocketV6(int handle);
 
-JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgTurnOn(JNIEnv *env, jclass c, jstring ifname, jint tun_fd, jstring settings)
+JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgTurnOn(JNIEnv *env, jclass c, jstring ifname, jint tun_fd, jint mtu, jobject settings, jint settings_len)
 {
+	void *settings_buf = (*env)->GetDirectBufferAddress(env, settings);
+	if (!settings_buf || settings_len < 0 || settings_len > (*env)->GetDirectBufferCapacity(env, settings))
+		return -1;
 	const char *ifname_str = (*env)->GetStringUTFChars(env, ifname, 0);
 	size_t ifname_len = (*env)->GetStringUTFLength(env, ifname);
-	const char *settings_str = (*env)->GetStringUTFChars(env, settings, 0);
-	size_t settings_len = (*env)->GetStringUTFLength(env, settings);
 	int ret = wgTurnOn((struct go_string){
 		.str = ifname_str,
 		.n = ifname_len
-	}, tun_fd, (struct go_string){
-		.str = settings_str,
-		.n = settings_len
-	});
+	}, tun_fd, mtu, settings_buf, settings_len);
 	(*env)->ReleaseStringUTFChars(env, ifname, ifname_str);
-	(*env)->ReleaseStringUTFChars(env, settings, settings_str);
 	return ret;
 }
 
+JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgSetConfig(JNIEnv *env, jclass c, jint handle, jobject settings, jint settings_len)
+{
+	void *settings_buf = (*env)->GetDirectBufferAddress(env, settings);
+	if (!settings_buf || settings_len < 0 || settings_len > (*env)->GetDirectBufferCapacity(env, settings))
+		return -1;
+	return wgSetConfig(handle, settings_buf, settings_len);
+}
+
+JNIEXPORT jstring JNICALL Java_com_wireguard_android_backend_GoBackend_wgGetConfig(JNIEnv *env, jclass c, jint handle)
+{
+	jstring ret;
+	char *config = wgGetConfig(handle);
+	if (!config)
+		return NULL;
+	ret = (*env)->NewStringUTF(env, config);
+	free(config);
+	return ret;
+}
+
+JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgSetMtu(JNIEnv *env, jclass c, jint handle, jint mtu)
+{
+	return wgSetMtu(handle, mtu);
+}
+
 JNIEXPORT void JNICALL Java_com_wireguard_android_backend_GoBackend_wgTurnOff(JNIEnv *env, jclass c, jint handle)
 {
 	wgTurnOff(handle);
 }
 
+JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgGetStatistics(JNIEnv *env, jclass c, jint handle, jobject buffer)
+{
+	void *address = (*env)->GetDirectBufferAddress(env, buffer);
+	jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+	if (!address || capacity < 0)
+		return -1;
+	return wgGetStatistics(handle, address, capacity > 0x7fffffff ? 0x7fffffff : (int)capacity);
+}
+
 JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgGetSocketV4(JNIEnv *env, jclass c, jint handle)
 {
 	return wgGetSocketV4(handle);
@@ -38,3 +75,17 @@ JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoBackend_wgGetSocketV
 {
 	return wgGetSocketV6(handle);
 }
+
+JNIEXPORT void JNICALL Java_com_wireguard_android_backend_GoLog_wgSetLogLevel(JNIEnv *env, jclass c, jint level)
+{
+	wgSetLogLevel(level);
+}
+
+JNIEXPORT jint JNICALL Java_com_wireguard_android_backend_GoLog_wgDrainLog(JNIEnv *env, jclass c, jobject buffer)
+{
+	void *address = (*env)->GetDirectBufferAddress(env, buffer);
+	jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+	if (!address || capacity < 0)
+		return -1;
+	return wgDrainLog(address, capacity > 0x7fffffff ? 0x7fffffff : (int)capacity);
+}
@@ -93,6 +93,26 @@ static char *concat_and_free(char *orig, const char *delim, const char *new_line
 	return ret;
 }
 
+/* Returns whether the space-separated list contains the item. */
+static bool list_contains(const char *list, const char *item)
+{
+	size_t len = strlen(item);
+
+	for (const char *i = strstr(list, item); i; i = strstr(i + 1, item)) {
+		if ((i == list || i[-1] == ' ') && (i[len] == ' ' || i[len] == '\0'))
+			return true;
+	}
+	return false;
+}
+
+/* Returns the address with an explicit prefix length, as printed by ip(8) and wg(8). */
+static char *get_prefix(const char *addr)
+{
+	if (strchr(addr, '/'))
+		return xstrdup(addr);
+	return concat((char *)addr, strchr(addr, ':') ? "/128" : "/32", NULL);
+}
+
 struct command_buffer {
 	char *line;
 	size_t len;
@@ -246,27 +266,45 @@ static void add_if(const char *iface)
 	cmd("ip link add %s type wireguard", iface);
 }
 
-static void del_if(const char *iface)
+static unsigned int get_netid(const char *iface)
 {
 	DEFINE_CMD(c);
 	regex_t reg;
 	regmatch_t matches[2];
-	char *netid = NULL;
 	_cleanup_free_ char *regex = concat("0xc([0-9a-f]+)/0xcffff lookup ", iface, NULL);
 
 	xregcomp(&reg, regex, REG_EXTENDED);
 
-	cmd("ip link del %s", iface);
 	for (char *ret = cmd_ret(&c, "ip rule show"); ret; ret = cmd_ret(&c, NULL)) {
 		if (!regexec(&reg, ret, ARRAY_SIZE(matches), matches, 0)) {
 			ret[matches[1].rm_eo] = '\0';
-			netid = &ret[matches[1].rm_so];
-			break;
+			return strtoul(&ret[matches[1].rm_so], NULL, 16);
 		}
 	}
+	return 0;
+}
 
+static void del_if(const char *iface)
+{
+	unsigned int netid = get_netid(iface);
+
+	cmd("ip link del %s", iface);
 	if (netid)
-		cndc("network destroy %lu", strtoul(netid, NULL, 16));
+		cndc("network destroy %u", netid);
+}
+
+static bool is_wireguard_if(const char *iface)
+{
+	DEFINE_CMD(c);
+
+	char *ifaces = cmd_ret(&c, "wg show interfaces");
+	if (ifaces) {
+		for (char *eiface = strtok(ifaces, " \n"); eiface; eiface = strtok(NULL, " \n")) {
+			if (!strcmp(iface, eiface))
+				return true;
+		}
+	}
+	return false;
 }
 
 static void up_if(unsigned int *netid, const char *iface)
@@ -372,18 +410,13 @@ static int get_route_mtu(const char *endpoint)
 	return atoi(mtu);
 }
 
-static void set_mtu(const char *iface, unsigned int mtu)
+static int get_auto_mtu(const char *iface)
 {
 	DEFINE_CMD(c_endpoints);
 	regex_t regex_endpoint;
 	regmatch_t matches[2];
 	int endpoint_mtu, next_mtu;
 
-	if (mtu) {
-		cndc("interface setmtu %s %u", iface, mtu);
-		return;
-	}
-
 	xregcomp(&regex_endpoint, "^\\[?([a-z0-9:.]+)\\]?:[0-9]+$", REG_EXTENDED);
 
 	endpoint_mtu = get_route_mtu("default");
@@ -401,7 +434,12 @@ static void set_mtu(const char *iface, unsigned int mtu)
 			endpoint_mtu = next_mtu;
 	}
 
-	cndc("interface setmtu %s %d", iface, endpoint_mtu - 80);
+	return endpoint_mtu - 80;
+}
+
+static void set_mtu(const char *iface, unsigned int mtu)
+{
+	cndc("interface setmtu %s %d", iface, mtu ? (int)mtu : get_auto_mtu(iface));
 }
 
 static void add_route(const char *iface, unsigned int netid, const char *route)
@@ -424,6 +462,126 @@ static void set_routes(const char *iface, unsigned int netid)
 	}
 }
 
+/* Returns a space-separated list of the routes that netd installed in the interface's table. */
+static char *get_routes(const char *iface, int family)
+{
+	DEFINE_CMD(c);
+	char *routes = xstrdup("");
+
+	for (char *route = cmd_ret(&c, "ip -%d route show table %s 2>/dev/null", family, iface); route; route = cmd_ret(&c, NULL)) {
+		_cleanup_free_ char *prefix = NULL;
+		char *dest;
+
+		if (!strstr(route, " proto static"))
+			continue;
+		dest = strtok(route, " \n");
+		if (!dest)
+			continue;
+		if (!strcmp(dest, "default"))
+			dest = family == 6 ? "::/0" : "0.0.0.0/0";
+		prefix = get_prefix(dest);
+		routes = concat_and_free(routes, " ", prefix);
+	}
+	return routes;
+}
+
+static void sync_routes(const char *iface, unsigned int netid)
+{
+	DEFINE_CMD(c);
+	_cleanup_free_ char *wanted = xstrdup("");
+	_cleanup_free_ char *installed4 = get_routes(iface, 4);
+	_cleanup_free_ char *installed6 = get_routes(iface, 6);
+	_cleanup_free_ char *installed = concat(installed4, " ", installed6, NULL);
+
+	for (char *allowedips = cmd_ret(&c, "wg show %s allowed-ips", iface); allowedips; allowedips = cmd_ret(&c, NULL)) {
+		char *start = strchr(allowedips, '\t');
+
+		if (!start)
+			continue;
+		++start;
+		for (char *allowedip = strtok(start, " \n"); allowedip; allowedip = strtok(NULL, " \n"))
+			wanted = concat_and_free(wanted, " ", allowedip);
+	}
+
+	/* Add the new routes before removing the old ones, so that no traffic goes astray. */
+	_cleanup_free_ char *mutable = xstrdup(wanted);
+	for (char *route = strtok(mutable, " "); route; route = strtok(NULL, " ")) {
+		if (!list_contains(installed, route))
+			add_route(iface, netid, route);
+	}
+	for (char *route = strtok(installed, " "); route; route = strtok(NULL, " ")) {
+		if (!list_contains(wanted, route))
+			cndc("network route remove %u %s %s", netid, iface, route);
+	}
+}
+
+static void sync_addr(const char *iface, const char *addrs)
+{
+	DEFINE_CMD(c);
+	_cleanup_free_ char *wanted = xstrdup("");
+	_cleanup_free_ char *installed = xstrdup("");
+	_cleanup_free_ char *mutable = xstrdup(addrs);
+
+	for (char *addr = strtok(mutable, ", \t\n"); addr; addr = strtok(NULL, ", \t\n")) {
+		_cleanup_free_ char *prefix = NULL;
+
+		if (strchr(addr, '\'') || strchr(addr, '\\'))
+			continue;
+		prefix = get_prefix(addr);
+		wanted = concat_and_free(wanted, " ", prefix);
+	}
+
+	for (char *line = cmd_ret(&c, "ip -o addr show dev %s", iface); line; line = cmd_ret(&c, NULL)) {
+		char *addr = strstr(line, " inet ");
+
+		if (!addr)
+			addr = strstr(line, " inet6 ");
+		if (!addr || strstr(line, " scope link"))
+			continue;
+		addr = strtok(strchr(addr + 1, ' '), " \n");
+		if (addr)
+			installed = concat_and_free(installed, " ", addr);
+	}
+
+	/* Remove old addresses first, since netd replaces rather than adds IPv4 addresses. */
+	free(mutable);
+	mutable = xstrdup(installed);
+	for (char *addr = strtok(mutable, " "); addr; addr = strtok(NULL, " ")) {
+		if (!list_contains(wanted, addr))
+			cmd("ip addr del '%s' dev %s", addr, iface);
+	}
+	for (char *addr = strtok(wanted, " "); addr; addr = strtok(NULL, " ")) {
+		if (!list_contains(installed, addr))
+			add_addr(iface, addr);
+	}
+}
+
+static void sync_dnses(unsigned int netid, const char *dnses)
+{
+	if (strlen(dnses))
+		set_dnses(netid, dnses);
+	else
+		cndc("resolver clearnetdns %u", netid);
+}
+
+static void sync_mtu(const char *iface, unsigned int mtu)
+{
+	DEFINE_CMD(c);
+	regex_t regex_mtu;
+	regmatch_t matches[2];
+	int wanted = mtu ? (int)mtu : get_auto_mtu(iface);
+	char *link = cmd_ret(&c, "ip -o link show dev %s", iface);
+
+	xregcomp(&regex_mtu, "mtu ([0-9]+)", REG_EXTENDED);
+
+	if (link && !regexec(&regex_mtu, link, ARRAY_SIZE(matches), matches, 0)) {
+		link[matches[1].rm_eo] = '\0';
+		if (atoi(&link[matches[1].rm_so]) == wanted)
+			return;
+	}
+	cndc("interface setmtu %s %d", iface, wanted);
+}
+
 static void set_config(const char *iface, const char *config)
 {
 	FILE *config_writer;
@@ -456,12 +614,14 @@ static void print_search_paths(FILE *file, const char *prefix)
 
 static void cmd_usage(const char *program)
 {
-	printf( "Usage: %s [ up | down ] [ CONFIG_FILE | INTERFACE ]\n"
+	printf( "Usage: %s [ up | down | sync ] [ CONFIG_FILE | INTERFACE [ - ] ]\n"
 		"\n"
 		"  CONFIG_FILE is a configuration file, whose filename is the interface name\n"
 		"  followed by `.conf'. Otherwise, INTERFACE is an interface name, with\n"
 		"  configuration found at:\n\n", program);
 	print_search_paths(stdout, "  - ");
+	printf( "\n  If INTERFACE is followed by `-', the configuration is instead read from\n"
+		"  standard input. The `down' sub-command only needs the interface name.\n");
 	printf( "\n  It is to be readable by wg(8)'s `setconf' sub-command, with the exception\n"
 		"  of the following additions to the [Interface] section, which are handled by\n"
 		"  this program:\n\n"
@@ -469,6 +629,10 @@ static void cmd_usage(const char *program)
 		"    IP addresses (with an optional CIDR mask) to be set for the interface.\n"
 		"  - MTU: an optional MTU for the interface; if unspecified, auto-calculated.\n"
 		"  - DNS: an optional DNS server to use while the device is up.\n\n"
+		"  The `sync' sub-command brings the addresses, DNS servers, routes, and MTU of\n"
+		"  a running interface in line with CONFIG_FILE and its current peers, changing\n"
+		"  only what differs. It does not touch the WireGuard configuration itself,\n"
+		"  which can be updated beforehand with wg(8)'s `set' sub-command.\n\n"
 		"  See wg-quick(8) for more info and examples.\n");
 }
 
@@ -510,19 +674,7 @@ static void cmd_up(const char *iface, const char *config, unsigned int mtu, cons
 
 static void cmd_down(const char *iface)
 {
-	DEFINE_CMD(c);
-	bool found = false;
-
-	char *ifaces = cmd_ret(&c, "wg show interfaces");
-	if (ifaces) {
-		for (char *eiface = strtok(ifaces, " \n"); eiface; eiface = strtok(NULL, " \n")) {
-			if (!strcmp(iface, eiface)) {
-				found = true;
-				break;
-			}
-		}
-	}
-	if (!found) {
+	if (!is_wireguard_if(iface)) {
 		fprintf(stderr, "Error: %s is not a WireGuard interface\n", iface);
 		exit(EMEDIUMTYPE);
 	}
@@ -531,25 +683,61 @@ static void cmd_down(const char *iface)
 	exit(EXIT_SUCCESS);
 }
 
-static void parse_options(char **iface, char **config, unsigned int *mtu, char **addrs, char **dnses, const char *arg)
+static void cmd_sync(const char *iface, unsigned int mtu, const char *addrs, const char *dnses)
 {
-	_cleanup_fclose_ FILE *file = NULL;
-	_cleanup_free_ char *line = NULL;
+	unsigned int netid;
+
+	if (!is_wireguard_if(iface)) {
+		fprintf(stderr, "Error: %s is not a WireGuard interface\n", iface);
+		exit(EMEDIUMTYPE);
+	}
+	netid = get_netid(iface);
+	if (!netid) {
+		fprintf(stderr, "Error: Unable to find the network of %s\n", iface);
+		exit(ENONET);
+	}
+
+	sync_addr(iface, addrs);
+	sync_dnses(netid, dnses);
+	sync_routes(iface, netid);
+	sync_mtu(iface, mtu);
+	exit(EXIT_SUCCESS);
+}
+
+static bool is_valid_iface_name(const char *arg)
+{
+	regex_t regex_iface;
+
+	xregcomp(&regex_iface, "^[a-zA-Z0-9_=+.-]{1,15}$", REG_EXTENDED | REG_NOSUB);
+	return !regexec(&regex_iface, arg, 0, NULL, 0);
+}
+
+static FILE *open_config(char **iface, const char *arg, bool from_stdin)
+{
+	FILE *file = NULL;
 	_cleanup_free_ char *filename = NULL;
 	_cleanup_free_ char *paths = strdup(WG_CONFIG_SEARCH_PATHS);
-	regex_t regex_iface, regex_conf;
+	regex_t regex_conf;
 	regmatch_t matches[2];
 	struct stat sbuf;
-	size_t n = 0;
-	bool in_interface_section = false;
 
-	*iface = *config = *addrs = *dnses = NULL;
-	*mtu = 0;
-
-	xregcomp(&regex_iface, "^[a-zA-Z0-9_=+.-]{1,15}$", REG_EXTENDED | REG_NOSUB);
 	xregcomp(&regex_conf, "/?([a-zA-Z0-9_=+.-]{1,15})\\.conf$", REG_EXTENDED);
 
-	if (!regexec(&regex_iface, arg, 0, NULL, 0)) {
+	if (from_stdin) {
+		if (!is_valid_iface_name(arg)) {
+			fprintf(stderr, "Error: `%s' is not a valid interface name\n", arg);
+			exit(EINVAL);
+		}
+		file = fdopen(dup(STDIN_FILENO), "r");
+		if (!file) {
+			perror("Error: fdopen");
+			exit(errno);
+		}
+		*iface = xstrdup(arg);
+		return file;
+	}
+
+	if (is_valid_iface_name(arg)) {
 		for (char *path = strtok(paths, " "); path; path = strtok(NULL, " ")) {
 			free(filename);
 			if (asprintf(&filename, "%s/%s.conf", path, arg) < 0) {
@@ -588,6 +776,20 @@ static void parse_options(char **iface, char **config, unsigned int *mtu, char *
 
 	filename[matches[1].rm_eo] = 0;
 	*iface = xstrdup(&filename[matches[1].rm_so]);
+	return file;
+}
+
+static void parse_options(char **iface, char **config, unsigned int *mtu, char **addrs, char **dnses, const char *arg, bool from_stdin)
+{
+	_cleanup_fclose_ FILE *file = NULL;
+	_cleanup_free_ char *line = NULL;
+	size_t n = 0;
+	bool in_interface_section = false;
+
+	*iface = *config = *addrs = *dnses = NULL;
+	*mtu = 0;
+
+	file = open_config(iface, arg, from_stdin);
 
 	while (getline(&line, &n, file) >= 0) {
 		size_t len = strlen(line), j = 0;
@@ -637,17 +839,26 @@ int main(int argc, char *argv[])
 	_cleanup_free_ char *addrs = NULL;
 	_cleanup_free_ char *dnses = NULL;
 	unsigned int mtu;
+	bool from_stdin = argc == 4 && !strcmp(argv[3], "-");
 
 	if (argc == 2 && (!strcmp(argv[1], "help") || !strcmp(argv[1], "--help") || !strcmp(argv[1], "-h")))
 		cmd_usage(argv[0]);
-	else if (argc == 3 && !strcmp(argv[1], "up")) {
+	else if ((argc == 3 || from_stdin) && !strcmp(argv[1], "up")) {
 		auto_su(argc, argv);
-		parse_options(&iface, &config, &mtu, &addrs, &dnses, argv[2]);
+		parse_options(&iface, &config, &mtu, &addrs, &dnses, argv[2], from_stdin);
 		cmd_up(iface, config, mtu, addrs, dnses);
 	} else if (argc == 3 && !strcmp(argv[1], "down")) {
 		auto_su(argc, argv);
-		parse_options(&iface, &config, &mtu, &addrs, &dnses, argv[2]);
+		/* Taking an interface down needs nothing from its configuration but the name. */
+		if (is_valid_iface_name(argv[2]))
+			iface = xstrdup(argv[2]);
+		else
+			parse_options(&iface, &config, &mtu, &addrs, &dnses, argv[2], false);
 		cmd_down(iface);
+	} else if ((argc == 3 || from_stdin) && !strcmp(argv[1], "sync")) {
+		auto_su(argc, argv);
+		parse_options(&iface, &config, &mtu, &addrs, &dnses, argv[2], from_stdin);
+		cmd_sync(iface, mtu, addrs, dnses);
 	} else {
 		cmd_usage(argv[0]);
 		return 1;